@@ -0,0 +1,12 @@
+package org.jetbrains.plugins.innerbuilder;
+
+/**
+ * Generates an inner builder class for every top-level and static nested class in the file.
+ */
+public class InnerBuilderAllAction extends InnerBuilderBaseAction {
+
+    @Override
+    protected InnerBuilderHandler createHandler() {
+        return new InnerBuilderAllHandler();
+    }
+}
@@ -0,0 +1,37 @@
+package org.jetbrains.plugins.innerbuilder;
+
+import static org.jetbrains.plugins.innerbuilder.InnerBuilderCollector.collectFieldsOfAllClasses;
+
+import java.util.List;
+import java.util.Map;
+
+import com.intellij.codeInsight.generation.PsiFieldMember;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiJavaFile;
+
+/**
+ * Generates builders with all fields for every top-level and static nested class in the file, in one pass.
+ */
+public class InnerBuilderAllHandler extends InnerBuilderHandler {
+
+    @Override
+    public boolean isValidFor(final Editor editor, final PsiFile file) {
+        return file instanceof PsiJavaFile && editor.getProject() != null
+                && !collectFieldsOfAllClasses(file).isEmpty();
+    }
+
+    @Override
+    protected void generate(final Project project, final Editor editor, final PsiFile file) {
+        final Map<PsiClass, List<PsiFieldMember>> classFields = collectFieldsOfAllClasses(file);
+        if (classFields.isEmpty()) {
+            return;
+        }
+
+        InnerBuilderGenerator.generateAll(project, editor, file, classFields);
+    }
+}
@@ -0,0 +1,39 @@
+package org.jetbrains.plugins.innerbuilder;
+
+import org.jetbrains.annotations.NotNull;
+
+import com.intellij.codeInsight.CodeInsightActionHandler;
+import com.intellij.codeInsight.actions.BaseCodeInsightAction;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+
+import com.intellij.psi.PsiFile;
+
+/**
+ * Base class of the actions of this plugin, the handler and everything it uses is only loaded when the action is
+ * first updated or performed.
+ */
+public abstract class InnerBuilderBaseAction extends BaseCodeInsightAction {
+    private InnerBuilderHandler handler;
+
+    protected abstract InnerBuilderHandler createHandler();
+
+    @NotNull
+    @Override
+    protected CodeInsightActionHandler getHandler() {
+        return getInnerBuilderHandler();
+    }
+
+    @Override
+    protected boolean isValidForFile(@NotNull Project project, @NotNull Editor editor, @NotNull PsiFile file) {
+        return getInnerBuilderHandler().isValidFor(editor, file);
+    }
+
+    private synchronized InnerBuilderHandler getInnerBuilderHandler() {
+        if (handler == null) {
+            handler = createHandler();
+        }
+        return handler;
+    }
+}
@@ -0,0 +1,12 @@
+package org.jetbrains.plugins.innerbuilder;
+
+/**
+ * Generates a JMH benchmark class for the inner builder in the test sources of the module.
+ */
+public class InnerBuilderBenchmarkAction extends InnerBuilderBaseAction {
+
+    @Override
+    protected InnerBuilderHandler createHandler() {
+        return new InnerBuilderBenchmarkHandler();
+    }
+}
@@ -0,0 +1,360 @@
+package org.jetbrains.plugins.innerbuilder;
+
+import java.util.List;
+import java.util.Set;
+
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
+
+import org.jetbrains.jps.model.java.JavaSourceRootType;
+
+import com.intellij.codeInsight.generation.PsiFieldMember;
+import com.intellij.codeInsight.hint.HintManager;
+
+import com.intellij.ide.highlighter.JavaFileType;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleUtilCore;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+
+import com.intellij.psi.CommonClassNames;
+import com.intellij.psi.PsiArrayType;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassType;
+import com.intellij.psi.PsiDirectory;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiFileFactory;
+import com.intellij.psi.PsiJavaFile;
+import com.intellij.psi.PsiManager;
+import com.intellij.psi.PsiMethod;
+import com.intellij.psi.PsiModifier;
+import com.intellij.psi.PsiParameter;
+import com.intellij.psi.PsiPrimitiveType;
+import com.intellij.psi.PsiType;
+import com.intellij.psi.codeStyle.CodeStyleManager;
+import com.intellij.psi.codeStyle.JavaCodeStyleManager;
+
+/**
+ * Generates a JMH benchmark class in the test sources measuring the builder, the copy builder and, if there is an
+ * accessible constructor taking all fields, direct construction. The benchmarks can be run with the GC profiler from
+ * the generated main method to see whether the builder allocation is eliminated.
+ */
+public final class InnerBuilderBenchmarkGenerator {
+    @NonNls
+    private static final String BENCHMARK_CLASS_SUFFIX = "Benchmark";
+    @NonNls
+    private static final String JMH_ANNOTATIONS = "org.openjdk.jmh.annotations.";
+    @NonNls
+    private static final String NULL_TEXT = "null";
+    @NonNls
+    private static final String JAVA_MATH_DOT = "java.math.";
+    @NonNls
+    private static final String JAVA_TIME_DOT = "java.time.";
+    private static final int MAX_SAMPLE_DEPTH = 3;
+    @NonNls
+    private static final String INSTANCE_DEFAULT_NAME = "instance";
+    @NonNls
+    private static final String INSTANCE_ALTERNATIVE_NAME = "builtInstance";
+
+    private InnerBuilderBenchmarkGenerator() { }
+
+    public static void generate(final Project project, final Editor editor, final PsiClass targetClass,
+                                final List<PsiFieldMember> builderFields, final Set<InnerBuilderOption> options) {
+        final PsiDirectory testDirectory = findTestDirectory(project, targetClass);
+        if (testDirectory == null) {
+            HintManager.getInstance().showErrorHint(editor, "No test source root found for the benchmark");
+            return;
+        }
+
+        final String benchmarkClassName = targetClass.getName() + BENCHMARK_CLASS_SUFFIX;
+        final String fileName = benchmarkClassName + "." + JavaFileType.DEFAULT_EXTENSION;
+        final String packageName = ((PsiJavaFile) targetClass.getContainingFile()).getPackageName();
+
+        final PsiFile benchmarkFile = ApplicationManager.getApplication().runWriteAction(new Computable<PsiFile>() {
+            @Override
+            public PsiFile compute() {
+                final PsiDirectory packageDirectory = findOrCreatePackageDirectory(testDirectory, packageName);
+                final PsiFile existingFile = packageDirectory.findFile(fileName);
+                if (existingFile != null) {
+                    return existingFile; // never overwrite an edited benchmark
+                }
+
+                final PsiFile newFile = PsiFileFactory.getInstance(project).createFileFromText(fileName,
+                        JavaFileType.INSTANCE, createBenchmarkText(InnerBuilderTemplates.getInstance(project),
+                                targetClass, benchmarkClassName, packageName, builderFields, options));
+                final PsiFile addedFile = (PsiFile) packageDirectory.add(newFile);
+                JavaCodeStyleManager.getInstance(project).shortenClassReferences(addedFile);
+                CodeStyleManager.getInstance(project).reformat(addedFile);
+                return addedFile;
+            }
+        });
+
+        benchmarkFile.navigate(true);
+    }
+
+    @Nullable
+    private static PsiDirectory findTestDirectory(final Project project, final PsiClass targetClass) {
+        final Module module = ModuleUtilCore.findModuleForPsiElement(targetClass);
+        if (module == null) {
+            return null;
+        }
+
+        // test source roots only, never test resource roots
+        for (final VirtualFile sourceRoot : ModuleRootManager.getInstance(module).getSourceRoots(
+                JavaSourceRootType.TEST_SOURCE)) {
+            final PsiDirectory directory = PsiManager.getInstance(project).findDirectory(sourceRoot);
+            if (directory != null) {
+                return directory;
+            }
+        }
+        return null;
+    }
+
+    private static PsiDirectory findOrCreatePackageDirectory(final PsiDirectory root, final String packageName) {
+        PsiDirectory directory = root;
+        if (packageName.isEmpty()) {
+            return directory;
+        }
+
+        for (final String name : packageName.split("\\.")) {
+            final PsiDirectory subdirectory = directory.findSubdirectory(name);
+            directory = subdirectory != null ? subdirectory : directory.createSubdirectory(name);
+        }
+        return directory;
+    }
+
+    private static String createBenchmarkText(final InnerBuilderTemplates templates, final PsiClass targetClass,
+                                              final String benchmarkClassName, final String packageName,
+                                              final List<PsiFieldMember> builderFields,
+                                              final Set<InnerBuilderOption> options) {
+        final String targetName = targetClass.getQualifiedName();
+        final boolean newBuilderMethod = options.contains(InnerBuilderOption.NEW_BUILDER_METHOD);
+
+        // the state fields are named like the builder fields, the built instance must not clash with them
+        String instanceName = INSTANCE_DEFAULT_NAME;
+        for (final PsiFieldMember member : builderFields) {
+            if (INSTANCE_DEFAULT_NAME.equals(member.getElement().getName())) {
+                instanceName = INSTANCE_ALTERNATIVE_NAME;
+            }
+        }
+
+        final StringBuilder stateFields = new StringBuilder();
+        final StringBuilder finalArguments = new StringBuilder();
+        final StringBuilder setterCalls = new StringBuilder();
+        final StringBuilder allArguments = new StringBuilder();
+        String firstSetterCall = "";
+        for (final PsiFieldMember member : builderFields) {
+            final PsiField field = member.getElement();
+            final String fieldName = field.getName();
+
+            // non-final state fields, so the values are not constant folded
+            final String sampleValue = sampleValueText(field.getType(), fieldName, 0);
+            stateFields.append(String.format("private %s %s = %s;%s\n", field.getType().getCanonicalText(),
+                    fieldName, sampleValue, NULL_TEXT.equals(sampleValue) ? " // TODO: set a realistic value" : ""));
+
+            if (allArguments.length() > 0) {
+                allArguments.append(", ");
+            }
+            allArguments.append(fieldName);
+
+            if (field.hasModifierProperty(PsiModifier.FINAL) && !options.contains(InnerBuilderOption.FINAL_SETTERS)) {
+                if (finalArguments.length() > 0) {
+                    finalArguments.append(", ");
+                }
+                finalArguments.append(fieldName);
+            } else {
+                final String setterCall = String.format(".%s(%s)",
+                        InnerBuilderGenerator.builderSetterName(templates, fieldName, options), fieldName);
+                setterCalls.append(setterCall);
+                if (firstSetterCall.isEmpty()) {
+                    firstSetterCall = setterCall;
+                }
+            }
+        }
+
+        final String newBuilder = newBuilderMethod
+                ? String.format("%s.newBuilder(%s)", targetName, finalArguments)
+                : String.format("new %s.%s(%s)", targetName, InnerBuilderGenerator.BUILDER_CLASS_NAME,
+                finalArguments);
+
+        final StringBuilder benchmarks = new StringBuilder();
+        benchmarks.append(String.format("@%1$sBenchmark\npublic %2$s builder() {\nreturn %3$s%4$s.build();\n}\n",
+                JMH_ANNOTATIONS, targetName, newBuilder, setterCalls));
+        if (options.contains(InnerBuilderOption.COPY_CONSTRUCTOR)) {
+            final String copyBuilder = newBuilderMethod
+                    ? String.format("%s.newBuilder(%s)", targetName, instanceName)
+                    : String.format("new %s.%s(%s)", targetName, InnerBuilderGenerator.BUILDER_CLASS_NAME,
+                    instanceName);
+            benchmarks.append(String.format(
+                    "@%1$sBenchmark\npublic %2$s copyBuilder() {\nreturn %3$s%4$s.build();\n}\n",
+                    JMH_ANNOTATIONS, targetName, copyBuilder, firstSetterCall));
+        }
+        if (hasAllFieldsConstructor(targetClass, builderFields)) {
+            benchmarks.append(String.format("@%1$sBenchmark\npublic %2$s direct() {\nreturn new %2$s(%3$s);\n}\n",
+                    JMH_ANNOTATIONS, targetName, allArguments));
+        }
+
+        final StringBuilder benchmarkText = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            benchmarkText.append(String.format("package %s;\n\n", packageName));
+        }
+        benchmarkText.append(String.format("@%1$sState(%1$sScope.Thread)\n"
+                + "@%1$sBenchmarkMode(%1$sMode.AverageTime)\n"
+                + "@%1$sOutputTimeUnit(java.util.concurrent.TimeUnit.NANOSECONDS)\n"
+                + "@%1$sFork(1)\n"
+                + "public class %2$s {\n"
+                + "%3$s"
+                + "private %4$s %6$s;\n"
+                + "@%1$sSetup\npublic void setUp() {\n%6$s = builder();\n}\n"
+                + "%5$s"
+                + "public static void main(String[] args) throws org.openjdk.jmh.runner.RunnerException {\n"
+                + "new org.openjdk.jmh.runner.Runner(new org.openjdk.jmh.runner.options.OptionsBuilder()\n"
+                + ".include(%2$s.class.getSimpleName())\n"
+                + ".addProfiler(org.openjdk.jmh.profile.GCProfiler.class)\n"
+                + ".build()).run();\n}\n"
+                + "}\n", JMH_ANNOTATIONS, benchmarkClassName, stateFields, targetName, benchmarks, instanceName));
+        return benchmarkText.toString();
+    }
+
+    private static boolean hasAllFieldsConstructor(final PsiClass targetClass,
+                                                   final List<PsiFieldMember> builderFields) {
+        for (final PsiMethod constructor : targetClass.getConstructors()) {
+            if (constructor.hasModifierProperty(PsiModifier.PRIVATE)) {
+                continue;
+            }
+
+            final PsiParameter[] parameters = constructor.getParameterList().getParameters();
+            if (parameters.length != builderFields.size()) {
+                continue;
+            }
+
+            boolean matches = true;
+            for (int i = 0; i < parameters.length && matches; i++) {
+                matches = InnerBuilderUtils.areTypesPresentableEqual(parameters[i].getType(),
+                        builderFields.get(i).getElement().getType());
+            }
+            if (matches) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns a realistic, non-default value for a field of the type. Other classes are created with their
+     * constructor taking the fewest parameters, up to a few levels deep, {@code null} is only returned if there is no
+     * such constructor.
+     */
+    private static String sampleValueText(final PsiType type, final String fieldName, final int depth) {
+        final PsiPrimitiveType unboxedType = PsiPrimitiveType.getUnboxedType(type);
+        final PsiType primitiveType = unboxedType != null ? unboxedType : type;
+        if (PsiType.BOOLEAN.equals(primitiveType)) {
+            return "true";
+        } else if (PsiType.CHAR.equals(primitiveType)) {
+            return "'a'";
+        } else if (PsiType.BYTE.equals(primitiveType)) {
+            return "(byte) 42";
+        } else if (PsiType.SHORT.equals(primitiveType)) {
+            return "(short) 42";
+        } else if (PsiType.INT.equals(primitiveType)) {
+            return "42";
+        } else if (PsiType.LONG.equals(primitiveType)) {
+            return "42L";
+        } else if (PsiType.FLOAT.equals(primitiveType)) {
+            return "42.0f";
+        } else if (PsiType.DOUBLE.equals(primitiveType)) {
+            return "42.0";
+        } else if (InnerBuilderUtils.isString(type)) {
+            return String.format("\"%s\"", fieldName);
+        } else if (InnerBuilderUtils.isEnum(type)) {
+            return String.format("%s.values()[0]", type.getCanonicalText());
+        } else if (type instanceof PsiArrayType) {
+            return InnerBuilderUtils.newArrayText(((PsiArrayType) type).getComponentType(), "8");
+        } else if (!(type instanceof PsiClassType)) {
+            return NULL_TEXT;
+        }
+
+        final String rawTypeText = ((PsiClassType) type).rawType().getCanonicalText();
+        final String knownValueText = knownSampleValueText(rawTypeText, fieldName);
+        if (knownValueText != null) {
+            return knownValueText;
+        }
+
+        // other value types, for example nested value objects, through their simplest constructor
+        final PsiClass clazz = ((PsiClassType) type).resolve();
+        if (clazz == null || depth >= MAX_SAMPLE_DEPTH || clazz.isInterface() || clazz.isEnum()
+                || clazz.hasModifierProperty(PsiModifier.ABSTRACT) || clazz.hasModifierProperty(PsiModifier.PRIVATE)
+                || clazz.hasTypeParameters()) {
+            return NULL_TEXT;
+        }
+        PsiMethod simplestConstructor = null;
+        for (final PsiMethod constructor : clazz.getConstructors()) {
+            if (!constructor.hasModifierProperty(PsiModifier.PRIVATE) && (simplestConstructor == null
+                    || constructor.getParameterList().getParametersCount()
+                    < simplestConstructor.getParameterList().getParametersCount())) {
+                simplestConstructor = constructor;
+            }
+        }
+        if (simplestConstructor == null && clazz.getConstructors().length > 0) {
+            return NULL_TEXT;
+        }
+
+        final StringBuilder arguments = new StringBuilder();
+        if (simplestConstructor != null) {
+            for (final PsiParameter parameter : simplestConstructor.getParameterList().getParameters()) {
+                if (arguments.length() > 0) {
+                    arguments.append(", ");
+                }
+                arguments.append(sampleValueText(parameter.getType(), parameter.getName(), depth + 1));
+            }
+        }
+        return String.format("new %s(%s)", rawTypeText, arguments);
+    }
+
+    /**
+     * Returns a sample value of a common JDK value type, or null if the type is not one of them.
+     */
+    @Nullable
+    private static String knownSampleValueText(final String rawTypeText, final String fieldName) {
+        if (CommonClassNames.JAVA_UTIL_LIST.equals(rawTypeText)
+                || CommonClassNames.JAVA_UTIL_COLLECTION.equals(rawTypeText)) {
+            return "java.util.Collections.emptyList()";
+        } else if (CommonClassNames.JAVA_UTIL_SET.equals(rawTypeText)) {
+            return "java.util.Collections.emptySet()";
+        } else if (CommonClassNames.JAVA_UTIL_MAP.equals(rawTypeText)) {
+            return "java.util.Collections.emptyMap()";
+        } else if (CommonClassNames.JAVA_LANG_OBJECT.equals(rawTypeText)
+                || CommonClassNames.JAVA_LANG_CHAR_SEQUENCE.equals(rawTypeText)) {
+            return String.format("\"%s\"", fieldName);
+        } else if ((JAVA_MATH_DOT + "BigDecimal").equals(rawTypeText)) {
+            return "new java.math.BigDecimal(\"42.50\")";
+        } else if ((JAVA_MATH_DOT + "BigInteger").equals(rawTypeText)) {
+            return "java.math.BigInteger.valueOf(42L)";
+        } else if ((JAVA_TIME_DOT + "LocalDate").equals(rawTypeText)) {
+            return "java.time.LocalDate.of(2020, 1, 31)";
+        } else if ((JAVA_TIME_DOT + "LocalTime").equals(rawTypeText)) {
+            return "java.time.LocalTime.of(12, 30)";
+        } else if ((JAVA_TIME_DOT + "LocalDateTime").equals(rawTypeText)) {
+            return "java.time.LocalDateTime.of(2020, 1, 31, 12, 30)";
+        } else if ((JAVA_TIME_DOT + "Instant").equals(rawTypeText)) {
+            return "java.time.Instant.ofEpochSecond(1580473800L)";
+        } else if ((JAVA_TIME_DOT + "Duration").equals(rawTypeText)) {
+            return "java.time.Duration.ofSeconds(42L)";
+        } else if ("java.util.Date".equals(rawTypeText)) {
+            return "new java.util.Date(1580473800000L)";
+        } else if ("java.util.UUID".equals(rawTypeText)) {
+            return "new java.util.UUID(42L, 42L)";
+        } else if ("java.util.Currency".equals(rawTypeText)) {
+            return "java.util.Currency.getInstance(\"EUR\")";
+        } else if ("java.util.Optional".equals(rawTypeText)) {
+            return "java.util.Optional.empty()";
+        }
+        return null;
+    }
+}
@@ -0,0 +1,49 @@
+package org.jetbrains.plugins.innerbuilder;
+
+import static org.jetbrains.plugins.innerbuilder.InnerBuilderCollector.collectFields;
+
+import java.util.List;
+
+import com.intellij.codeInsight.generation.PsiFieldMember;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+
+/**
+ * Generates a JMH benchmark for the existing builder, using the fields of the existing Builder class and the options
+ * the builder was last generated with.
+ */
+public class InnerBuilderBenchmarkHandler extends InnerBuilderHandler {
+
+    @Override
+    public boolean isValidFor(final Editor editor, final PsiFile file) {
+        if (!super.isValidFor(editor, file)) {
+            return false;
+        }
+
+        final List<PsiFieldMember> existingFields = collectFields(file, editor);
+        return existingFields != null
+                && !InnerBuilderRegenerateHandler.builderFields(editor, file, existingFields).isEmpty();
+    }
+
+    @Override
+    protected void generate(final Project project, final Editor editor, final PsiFile file,
+                            final List<PsiFieldMember> existingFields) {
+        final List<PsiFieldMember> builderFields = InnerBuilderRegenerateHandler.builderFields(editor, file,
+                existingFields);
+        if (builderFields.isEmpty()) {
+            return;
+        }
+
+        final PsiClass targetClass = InnerBuilderUtils.getTargetClass(project, file, editor);
+        if (targetClass == null) {
+            return;
+        }
+
+        InnerBuilderBenchmarkGenerator.generate(project, editor, targetClass, builderFields,
+                InnerBuilderGenerator.storedOptions(project, targetClass));
+    }
+}
@@ -3,7 +3,9 @@ package org.jetbrains.plugins.innerbuilder;
 import static org.jetbrains.plugins.innerbuilder.InnerBuilderUtils.hasLowerCaseChar;
 
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.jetbrains.annotations.Nullable;
 
@@ -29,23 +31,41 @@ public final class InnerBuilderCollector {
     public static List<PsiFieldMember> collectFields(final PsiFile file, final Editor editor) {
         final int offset = editor.getCaretModel().getOffset();
         final PsiElement element = file.findElementAt(offset);
-        if (element == null) {
+        if (element == null || editor.getProject() == null) {
             return null;
         }
 
-        final PsiClass clazz = PsiTreeUtil.getParentOfType(element, PsiClass.class);
+        final PsiClass clazz = InnerBuilderUtils.getTargetClass(editor.getProject(), file, editor);
         if (clazz == null || clazz.hasModifierProperty(PsiModifier.ABSTRACT)) {
             return null;
         }
 
+        return collectFields(element, clazz);
+    }
+
+    /**
+     * Collects the fields of every class in the file a builder can be generated for, in file order.
+     */
+    public static Map<PsiClass, List<PsiFieldMember>> collectFieldsOfAllClasses(final PsiFile file) {
+        final Map<PsiClass, List<PsiFieldMember>> classFields = new LinkedHashMap<PsiClass, List<PsiFieldMember>>();
+        for (final PsiClass clazz : PsiTreeUtil.findChildrenOfType(file, PsiClass.class)) {
+            if (!InnerBuilderUtils.isBuilderTarget(clazz) || clazz.hasModifierProperty(PsiModifier.ABSTRACT)) {
+                continue;
+            }
+
+            final List<PsiFieldMember> fields = collectFields(clazz, clazz);
+            if (!fields.isEmpty()) {
+                classFields.put(clazz, fields);
+            }
+        }
+        return classFields;
+    }
+
+    private static List<PsiFieldMember> collectFields(final PsiElement element, final PsiClass clazz) {
         final List<PsiFieldMember> allFields = new ArrayList<PsiFieldMember>();
 
         PsiClass classToExtractFieldsFrom = clazz;
         while (classToExtractFieldsFrom != null) {
-            if (classToExtractFieldsFrom.hasModifierProperty(PsiModifier.STATIC)) {
-                break;
-            }
-
             final List<PsiFieldMember> classFieldMembers = collectFieldsInClass(element, clazz,
                     classToExtractFieldsFrom);
             allFields.addAll(0, classFieldMembers);
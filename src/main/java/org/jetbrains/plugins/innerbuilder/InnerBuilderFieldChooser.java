@@ -0,0 +1,322 @@
+package org.jetbrains.plugins.innerbuilder;
+
+import java.awt.BorderLayout;
+import java.awt.Component;
+import java.awt.FlowLayout;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import javax.swing.AbstractListModel;
+import javax.swing.JButton;
+import javax.swing.JCheckBox;
+import javax.swing.JComboBox;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JList;
+import javax.swing.JPanel;
+import javax.swing.JTextField;
+import javax.swing.ListCellRenderer;
+import javax.swing.event.DocumentEvent;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.intellij.codeInsight.generation.PsiFieldMember;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.ui.DialogWrapper;
+
+import com.intellij.psi.PsiAnnotation;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiModifierList;
+import com.intellij.psi.PsiType;
+
+import com.intellij.ui.DocumentAdapter;
+import com.intellij.ui.components.JBList;
+import com.intellij.ui.components.JBScrollPane;
+
+/**
+ * Field chooser for classes with a very large number of fields. The list only renders the visible rows, the field
+ * texts are computed once and the selection is kept in a bit set indexed by field. Rows can be filtered by type,
+ * annotation and declaring class, and all filtered rows selected or deselected at once. Every row shows the size of
+ * the field, the estimated size of an instance and of a builder with the selected fields is shown below the list.
+ */
+public class InnerBuilderFieldChooser extends DialogWrapper {
+    private static final String ALL_CLASSES = "All classes";
+
+    private final List<PsiFieldMember> members;
+    private final List<PsiType> instanceFieldTypes;
+    private final JCheckBox[] optionCheckBoxes;
+
+    // per field texts, computed once
+    private final String[] fieldTexts;
+    private final String[] typeTexts;
+    private final String[] annotationTexts;
+    private final String[] declaringClassNames;
+
+    private final BitSet selection;
+    private int[] visibleRows;
+
+    private final FieldListModel listModel = new FieldListModel();
+    private final JBList<Integer> fieldList = new JBList<Integer>(listModel);
+    private final JTextField typeFilter = new JTextField(12);
+    private final JTextField annotationFilter = new JTextField(12);
+    private final JComboBox<String> declaringClassFilter;
+    private final JLabel selectionLabel = new JLabel();
+    private final JLabel footprintLabel = new JLabel();
+
+    public InnerBuilderFieldChooser(final List<PsiFieldMember> members, @Nullable final PsiClass targetClass,
+                                    final Project project, final JCheckBox[] optionCheckBoxes) {
+        super(project, true);
+        this.members = members;
+        instanceFieldTypes = InnerBuilderFootprint.instanceFieldTypes(targetClass);
+        this.optionCheckBoxes = optionCheckBoxes;
+
+        final int memberCount = members.size();
+        fieldTexts = new String[memberCount];
+        typeTexts = new String[memberCount];
+        annotationTexts = new String[memberCount];
+        declaringClassNames = new String[memberCount];
+
+        final Set<String> classNames = new LinkedHashSet<String>();
+        classNames.add(ALL_CLASSES);
+        for (int i = 0; i < memberCount; i++) {
+            final PsiField field = members.get(i).getElement();
+            typeTexts[i] = field.getType().getPresentableText();
+            fieldTexts[i] = String.format("%s: %s (%s)", field.getName(), typeTexts[i],
+                    InnerBuilderFootprint.fieldText(field.getType()));
+            annotationTexts[i] = annotationText(field);
+
+            final PsiClass containingClass = field.getContainingClass();
+            declaringClassNames[i] = containingClass != null ? containingClass.getName() : "";
+            classNames.add(declaringClassNames[i]);
+        }
+
+        // everything is selected initially, like in the member chooser
+        selection = new BitSet(memberCount);
+        selection.set(0, memberCount);
+        declaringClassFilter = new JComboBox<String>(classNames.toArray(new String[classNames.size()]));
+
+        setTitle("Select Fields and Options for the Builder");
+        init();
+        filter();
+    }
+
+    private static String annotationText(final PsiField field) {
+        final PsiModifierList modifierList = field.getModifierList();
+        if (modifierList == null) {
+            return "";
+        }
+
+        final StringBuilder annotations = new StringBuilder();
+        for (final PsiAnnotation annotation : modifierList.getAnnotations()) {
+            annotations.append('@').append(annotation.getQualifiedName()).append(' ');
+        }
+        return annotations.toString();
+    }
+
+    @Nullable
+    @Override
+    protected JComponent createCenterPanel() {
+        fieldList.setCellRenderer(new FieldCellRenderer());
+        // a fixed height lets the list lay out without measuring every row
+        fieldList.setFixedCellHeight(new JCheckBox("x").getPreferredSize().height);
+        fieldList.setVisibleRowCount(20);
+        fieldList.addMouseListener(new MouseAdapter() {
+            @Override
+            public void mouseClicked(final MouseEvent event) {
+                final int row = fieldList.locationToIndex(event.getPoint());
+                if (row >= 0 && fieldList.getCellBounds(row, row).contains(event.getPoint())) {
+                    toggle(new int[]{row});
+                }
+            }
+        });
+        fieldList.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(final KeyEvent event) {
+                if (event.getKeyCode() == KeyEvent.VK_SPACE) {
+                    toggle(fieldList.getSelectedIndices());
+                    event.consume();
+                }
+            }
+        });
+
+        final DocumentAdapter filterListener = new DocumentAdapter() {
+            @Override
+            protected void textChanged(final DocumentEvent event) {
+                filter();
+            }
+        };
+        typeFilter.getDocument().addDocumentListener(filterListener);
+        annotationFilter.getDocument().addDocumentListener(filterListener);
+        declaringClassFilter.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent event) {
+                filter();
+            }
+        });
+
+        final JPanel filterPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filterPanel.add(new JLabel("Type:"));
+        filterPanel.add(typeFilter);
+        filterPanel.add(new JLabel("Annotation:"));
+        filterPanel.add(annotationFilter);
+        filterPanel.add(new JLabel("Declared in:"));
+        filterPanel.add(declaringClassFilter);
+
+        final JButton selectAllButton = new JButton("Select Shown");
+        selectAllButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent event) {
+                setVisibleSelected(true);
+            }
+        });
+        final JButton deselectAllButton = new JButton("Deselect Shown");
+        deselectAllButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(final ActionEvent event) {
+                setVisibleSelected(false);
+            }
+        });
+        final JPanel selectionPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        selectionPanel.add(selectAllButton);
+        selectionPanel.add(deselectAllButton);
+        selectionPanel.add(selectionLabel);
+
+        final JPanel optionsPanel = new JPanel(new GridLayout(0, 2));
+        for (final JCheckBox optionCheckBox : optionCheckBoxes) {
+            optionsPanel.add(optionCheckBox);
+        }
+
+        final JPanel selectionAndFootprintPanel = new JPanel(new BorderLayout());
+        selectionAndFootprintPanel.add(selectionPanel, BorderLayout.NORTH);
+        selectionAndFootprintPanel.add(footprintLabel, BorderLayout.SOUTH);
+
+        final JPanel southPanel = new JPanel(new BorderLayout());
+        southPanel.add(selectionAndFootprintPanel, BorderLayout.NORTH);
+        southPanel.add(optionsPanel, BorderLayout.CENTER);
+
+        final JPanel panel = new JPanel(new BorderLayout());
+        panel.add(filterPanel, BorderLayout.NORTH);
+        panel.add(new JBScrollPane(fieldList), BorderLayout.CENTER);
+        panel.add(southPanel, BorderLayout.SOUTH);
+        return panel;
+    }
+
+    @Nullable
+    @Override
+    public JComponent getPreferredFocusedComponent() {
+        return fieldList;
+    }
+
+    public List<PsiFieldMember> getSelectedElements() {
+        final List<PsiFieldMember> selectedMembers = new ArrayList<PsiFieldMember>(selection.cardinality());
+        for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1)) {
+            selectedMembers.add(members.get(i));
+        }
+        return selectedMembers;
+    }
+
+    private void filter() {
+        final String type = typeFilter.getText().trim().toLowerCase();
+        final String annotation = annotationFilter.getText().trim().toLowerCase();
+        final Object declaringClass = declaringClassFilter.getSelectedItem();
+
+        final int[] rows = new int[members.size()];
+        int rowCount = 0;
+        for (int i = 0; i < rows.length; i++) {
+            if (!type.isEmpty() && !typeTexts[i].toLowerCase().contains(type)) {
+                continue;
+            }
+            if (!annotation.isEmpty() && !annotationTexts[i].toLowerCase().contains(annotation)) {
+                continue;
+            }
+            if (declaringClass != null && !ALL_CLASSES.equals(declaringClass)
+                    && !declaringClass.equals(declaringClassNames[i])) {
+                continue;
+            }
+            rows[rowCount++] = i;
+        }
+
+        final int previousRowCount = visibleRows == null ? 0 : visibleRows.length;
+        visibleRows = new int[rowCount];
+        System.arraycopy(rows, 0, visibleRows, 0, rowCount);
+        listModel.rowsChanged(previousRowCount);
+        selectionChanged();
+    }
+
+    private void toggle(final int[] rows) {
+        for (final int row : rows) {
+            selection.flip(visibleRows[row]);
+        }
+        fieldList.repaint();
+        selectionChanged();
+    }
+
+    private void setVisibleSelected(final boolean selected) {
+        for (final int fieldIndex : visibleRows) {
+            selection.set(fieldIndex, selected);
+        }
+        fieldList.repaint();
+        selectionChanged();
+    }
+
+    private void selectionChanged() {
+        selectionLabel.setText(String.format("%d of %d fields selected, %d shown", selection.cardinality(),
+                members.size(), visibleRows.length));
+        setOKActionEnabled(!selection.isEmpty());
+
+        final List<PsiType> builderFieldTypes = new ArrayList<PsiType>(selection.cardinality());
+        for (int i = selection.nextSetBit(0); i >= 0; i = selection.nextSetBit(i + 1)) {
+            builderFieldTypes.add(members.get(i).getElement().getType());
+        }
+        footprintLabel.setText(InnerBuilderFootprint.summaryText(instanceFieldTypes, builderFieldTypes));
+    }
+
+    private final class FieldListModel extends AbstractListModel<Integer> {
+        @Override
+        public int getSize() {
+            return visibleRows == null ? 0 : visibleRows.length;
+        }
+
+        @Override
+        public Integer getElementAt(final int row) {
+            return visibleRows[row];
+        }
+
+        private void rowsChanged(final int previousRowCount) {
+            if (previousRowCount > 0) {
+                fireIntervalRemoved(this, 0, previousRowCount - 1);
+            }
+            if (visibleRows.length > 0) {
+                fireIntervalAdded(this, 0, visibleRows.length - 1);
+            }
+        }
+    }
+
+    private final class FieldCellRenderer implements ListCellRenderer<Integer> {
+        private final JCheckBox checkBox = new JCheckBox();
+
+        @Override
+        public Component getListCellRendererComponent(final JList<? extends Integer> list, final Integer value,
+                                                      final int row, final boolean isSelected,
+                                                      final boolean cellHasFocus) {
+            final int fieldIndex = value;
+            checkBox.setText(fieldTexts[fieldIndex]);
+            checkBox.setSelected(selection.get(fieldIndex));
+            checkBox.setBackground(isSelected ? list.getSelectionBackground() : list.getBackground());
+            checkBox.setForeground(isSelected ? list.getSelectionForeground() : list.getForeground());
+            return checkBox;
+        }
+    }
+}
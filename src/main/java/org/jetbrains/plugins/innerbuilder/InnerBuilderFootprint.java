@@ -0,0 +1,155 @@
+package org.jetbrains.plugins.innerbuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiModifier;
+import com.intellij.psi.PsiPrimitiveType;
+import com.intellij.psi.PsiType;
+
+/**
+ * Estimates the memory footprint of objects on a 64-bit HotSpot JVM, with and without compressed oops. Fields are
+ * laid out like HotSpot does: the gap after a 12 byte header is filled with smaller fields, then fields are placed
+ * by descending size and the object is padded to 8 bytes.
+ */
+public final class InnerBuilderFootprint {
+    private static final int OBJECT_ALIGNMENT = 8;
+    private static final int COMPRESSED_HEADER_SIZE = 12;
+    private static final int HEADER_SIZE = 16;
+    private static final int COMPRESSED_REFERENCE_SIZE = 4;
+    private static final int REFERENCE_SIZE = 8;
+
+    @NonNls
+    private static final String JAVA_UTIL_DOT = "java.util.";
+
+    private InnerBuilderFootprint() { }
+
+    /**
+     * Returns the size of a field of the type in bytes, the size of a reference for all non-primitive types.
+     */
+    static int fieldSize(PsiType type, boolean compressedOops) {
+        if (PsiType.LONG.equals(type) || PsiType.DOUBLE.equals(type)) {
+            return 8;
+        } else if (PsiType.INT.equals(type) || PsiType.FLOAT.equals(type)) {
+            return 4;
+        } else if (PsiType.SHORT.equals(type) || PsiType.CHAR.equals(type)) {
+            return 2;
+        } else if (PsiType.BYTE.equals(type) || PsiType.BOOLEAN.equals(type)) {
+            return 1;
+        }
+        return compressedOops ? COMPRESSED_REFERENCE_SIZE : REFERENCE_SIZE;
+    }
+
+    /**
+     * Returns the estimated size in bytes of an object with fields of the given types, including header and padding.
+     */
+    static int instanceSize(List<PsiType> fieldTypes, boolean compressedOops) {
+        // the number of fields of 1, 2, 4 and 8 bytes
+        final int[] fieldCounts = new int[OBJECT_ALIGNMENT + 1];
+        for (final PsiType fieldType : fieldTypes) {
+            fieldCounts[fieldSize(fieldType, compressedOops)]++;
+        }
+
+        int offset = compressedOops ? COMPRESSED_HEADER_SIZE : HEADER_SIZE;
+        if (fieldCounts[8] > 0 && offset % 8 != 0) {
+            for (int size = 4; size > 0; size /= 2) {
+                while (fieldCounts[size] > 0 && offset % 8 + size <= 8 && offset % 8 != 0) {
+                    offset += size;
+                    fieldCounts[size]--;
+                }
+            }
+            offset = align(offset, 8);
+        }
+        for (int size = 8; size > 0; size /= 2) {
+            offset += size * fieldCounts[size];
+        }
+        return align(offset, OBJECT_ALIGNMENT);
+    }
+
+    /**
+     * Returns the types of all instance fields of the class, including the fields of its superclasses.
+     */
+    static List<PsiType> instanceFieldTypes(@Nullable PsiClass clazz) {
+        final List<PsiType> fieldTypes = new ArrayList<PsiType>();
+        for (PsiClass current = clazz; current != null; current = current.getSuperClass()) {
+            for (final PsiField field : current.getFields()) {
+                if (!field.hasModifierProperty(PsiModifier.STATIC)) {
+                    fieldTypes.add(field.getType());
+                }
+            }
+        }
+        return fieldTypes;
+    }
+
+    /**
+     * Returns the primitive type a boxed primitive or primitive wrapper like {@code OptionalInt} could be replaced
+     * with, or null if there is none.
+     */
+    @Nullable
+    static String primitiveAlternative(PsiType type) {
+        final PsiPrimitiveType unboxedType = PsiPrimitiveType.getUnboxedType(type);
+        if (unboxedType != null) {
+            return unboxedType.getCanonicalText();
+        }
+
+        final String typeText = type.getCanonicalText();
+        if ((JAVA_UTIL_DOT + "OptionalInt").equals(typeText)) {
+            return PsiType.INT.getCanonicalText();
+        } else if ((JAVA_UTIL_DOT + "OptionalLong").equals(typeText)) {
+            return PsiType.LONG.getCanonicalText();
+        } else if ((JAVA_UTIL_DOT + "OptionalDouble").equals(typeText)) {
+            return PsiType.DOUBLE.getCanonicalText();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the shallow size of a field of the type, for example {@code 4 B} for an int and {@code 4/8 B} for a
+     * reference, which takes 8 bytes without compressed oops.
+     */
+    static String fieldSizeText(PsiType type) {
+        return sizeText(fieldSize(type, true), fieldSize(type, false));
+    }
+
+    /**
+     * Returns the estimated size of an object with fields of the given types, with and without compressed oops.
+     */
+    static String instanceSizeText(List<PsiType> fieldTypes) {
+        return sizeText(instanceSize(fieldTypes, true), instanceSize(fieldTypes, false));
+    }
+
+    /**
+     * Returns the text describing a field of the type, for example {@code 4/8 B, boxed: could be int}.
+     */
+    static String fieldText(PsiType type) {
+        final String primitiveAlternative = primitiveAlternative(type);
+        if (primitiveAlternative == null) {
+            return fieldSizeText(type);
+        }
+        return String.format("%s, %s: could be %s", fieldSizeText(type),
+                PsiPrimitiveType.getUnboxedType(type) != null ? "boxed" : "wrapper", primitiveAlternative);
+    }
+
+    /**
+     * Returns the summary of the estimated sizes of an instance and of its builder.
+     */
+    static String summaryText(List<PsiType> instanceFieldTypes, List<PsiType> builderFieldTypes) {
+        return String.format("64-bit JVM with/without compressed oops: instance %s, builder %s",
+                instanceSizeText(instanceFieldTypes), instanceSizeText(builderFieldTypes));
+    }
+
+    private static String sizeText(int compressedSize, int size) {
+        return compressedSize == size
+                ? String.format("%d B", size)
+                : String.format("%d/%d B", compressedSize, size);
+    }
+
+    private static int align(int offset, int alignment) {
+        return (offset + alignment - 1) / alignment * alignment;
+    }
+}
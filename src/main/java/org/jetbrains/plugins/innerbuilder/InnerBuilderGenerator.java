@@ -1,16 +1,22 @@
 package org.jetbrains.plugins.innerbuilder;
 
 import com.intellij.codeInsight.generation.PsiFieldMember;
+import com.intellij.codeInsight.hint.HintManager;
 import com.intellij.ide.util.PropertiesComponent;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.psi.*;
 import com.intellij.psi.codeStyle.CodeStyleManager;
 import com.intellij.psi.codeStyle.JavaCodeStyleManager;
 import com.intellij.psi.javadoc.PsiDocComment;
+import com.intellij.psi.util.InheritanceUtil;
 import com.intellij.psi.util.PropertyUtil;
 import com.intellij.psi.util.PsiUtil;
+import com.intellij.psi.util.TypeConversionUtil;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -22,7 +28,39 @@ import static org.jetbrains.plugins.innerbuilder.InnerBuilderUtils.areTypesPrese
 public class InnerBuilderGenerator implements Runnable {
 
     @NonNls
-    private static final String BUILDER_CLASS_NAME = "Builder";
+    static final String BUILDER_CLASS_NAME = "Builder";
+    @NonNls
+    static final String BULK_BUILDER_CLASS_NAME = "BulkBuilder";
+    @NonNls
+    private static final String BULK_BUILDER_DEFAULT_SIZE_NAME = "size";
+    @NonNls
+    private static final String BULK_BUILDER_ALTERNATIVE_SIZE_NAME = "rowCount";
+    @NonNls
+    private static final String BUILT_INSTANCE_DEFAULT_NAME = "built";
+    @NonNls
+    private static final String BUILT_INSTANCE_ALTERNATIVE_NAME = "lastBuilt";
+    @NonNls
+    private static final String COPY_SOURCE_DEFAULT_NAME = "source";
+    @NonNls
+    private static final String COPY_SOURCE_ALTERNATIVE_NAME = "copySource";
+    @NonNls
+    private static final String MATERIALIZE_METHOD_NAME = "materialize";
+    @NonNls
+    static final String INTERNER_CLASS_NAME = "Interner";
+    @NonNls
+    private static final String INTERNER_INSTANCE_NAME = "INSTANCE";
+    @NonNls
+    private static final String WITHER_MARKER_DEFAULT_NAME = "copy";
+    @NonNls
+    private static final String WITHER_MARKER_ALTERNATIVE_NAME = "copyMarker";
+    @NonNls
+    private static final String SUPPLIER_DEFAULT_SUFFIX = "Supplier";
+    @NonNls
+    private static final String SUPPLIER_ALTERNATIVE_SUFFIX = "LazySupplier";
+    @NonNls
+    private static final String RESOLVE_SUPPLIERS_METHOD_NAME = "resolveSuppliers";
+    @NonNls
+    private static final String JAVA_UTIL_FUNCTION_SUPPLIER = "java.util.function.Supplier";
     @NonNls
     private static final String BUILDER_SETTER_DEFAULT_PARAMETER_NAME = "val";
     @NonNls
@@ -34,97 +72,416 @@ public class InnerBuilderGenerator implements Runnable {
 
     private final Project project;
     private final PsiFile file;
-    private final Editor editor;
+    private final PsiClass targetClass;
     private final List<PsiFieldMember> selectedFields;
     private final PsiElementFactory psiElementFactory;
+    private final InnerBuilderTemplates templates;
+
+    private final Set<InnerBuilderOption> options;
+
+    // prepared outside of the write action by prepare()
+    private PsiType builderType;
+    private PsiClass builderClassPrototype;
+    private PsiMethod constructor;
+    private final List<PsiField> builderFields = new ArrayList<PsiField>();
+    private String builtInstanceName;
+    private String copySourceName;
+    private PsiMethod materializeMethod;
+    private final Map<String, String> supplierFieldNames = new LinkedHashMap<String, String>();
+    private PsiMethod resolveSuppliersMethod;
+    private PsiMethod newBuilderMethod;
+    private PsiMethod builderConstructorMethod;
+    private PsiMethod copyBuilderMethod;
+    private PsiMethod copyConstructorBuilderMethod;
+    private final List<PsiMethod> setterMethods = new ArrayList<PsiMethod>();
+    private PsiMethod buildMethod;
+    private PsiClass bulkBuilderClass;
+    private PsiMethod bulkConstructor;
+    private PsiClass internerClass;
+    private PsiMethod fromMapMethod;
+    private PsiMethod toMapMethod;
+    private final List<PsiMethod> codecMethods = new ArrayList<PsiMethod>();
+    private PsiMethod readFromMethod;
+    private PsiMethod allFieldsConstructor;
+    private final List<String> optionHints = new ArrayList<String>();
+    private final List<PsiMethod> witherMethods = new ArrayList<PsiMethod>();
+    private PsiMethod mergeMethod;
+    private final List<PsiMethod> collectorMethods = new ArrayList<PsiMethod>();
 
     public static void generate(final Project project, final Editor editor, final PsiFile file,
                                 final List<PsiFieldMember> selectedFields) {
-        final Runnable builderGenerator = new InnerBuilderGenerator(project, file, editor, selectedFields);
-        ApplicationManager.getApplication().runWriteAction(builderGenerator);
+        generate(project, editor, file, selectedFields, currentOptions());
+    }
+
+    public static void generate(final Project project, final Editor editor, final PsiFile file,
+                                final List<PsiFieldMember> selectedFields, final Set<InnerBuilderOption> options) {
+        final PsiClass targetClass = InnerBuilderUtils.getTargetClass(project, file, editor);
+        if (targetClass == null) {
+            return;
+        }
+
+        final InnerBuilderGenerator builderGenerator = new InnerBuilderGenerator(project, file, targetClass,
+                selectedFields, options);
+
+        // synthesize everything under a cancellable progress, only the insertion needs the write lock
+        final boolean prepared = ProgressManager.getInstance().runProcessWithProgressSynchronously(new Runnable() {
+            @Override
+            public void run() {
+                ApplicationManager.getApplication().runReadAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        builderGenerator.prepare();
+                    }
+                });
+            }
+        }, "Generating Builder", true, project);
+
+        if (prepared) {
+            ApplicationManager.getApplication().runWriteAction(builderGenerator);
+            storeOptions(project, targetClass, options);
+            if (!builderGenerator.optionHints.isEmpty()) {
+                HintManager.getInstance().showInformationHint(editor,
+                        StringUtil.join(builderGenerator.optionHints, "\n"));
+            }
+        }
+    }
+
+    /**
+     * Generates the builders of several classes of the same file in a single write action, sharing one reference
+     * shortening pass over the file. The hints about the options of all classes are shown together.
+     */
+    public static void generateAll(final Project project, final Editor editor, final PsiFile file,
+                                   final Map<PsiClass, List<PsiFieldMember>> classFields) {
+        final Set<InnerBuilderOption> options = currentOptions();
+        final List<InnerBuilderGenerator> builderGenerators = new ArrayList<InnerBuilderGenerator>();
+        for (final Map.Entry<PsiClass, List<PsiFieldMember>> entry : classFields.entrySet()) {
+            builderGenerators.add(new InnerBuilderGenerator(project, file, entry.getKey(), entry.getValue(), options));
+        }
+
+        final boolean prepared = ProgressManager.getInstance().runProcessWithProgressSynchronously(new Runnable() {
+            @Override
+            public void run() {
+                ApplicationManager.getApplication().runReadAction(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (final InnerBuilderGenerator builderGenerator : builderGenerators) {
+                            builderGenerator.prepare();
+                        }
+                    }
+                });
+            }
+        }, "Generating Builders", true, project);
+
+        if (!prepared) {
+            return;
+        }
+
+        ApplicationManager.getApplication().runWriteAction(new Runnable() {
+            @Override
+            public void run() {
+                final List<PsiClass> builderClasses = new ArrayList<PsiClass>();
+                for (final InnerBuilderGenerator builderGenerator : builderGenerators) {
+                    final PsiClass builderClass = builderGenerator.insert();
+                    if (builderClass != null) {
+                        builderClasses.add(builderClass);
+                    }
+                }
+
+                JavaCodeStyleManager.getInstance(project).shortenClassReferences(file);
+                final CodeStyleManager codeStyleManager = CodeStyleManager.getInstance(project);
+                for (final PsiClass builderClass : builderClasses) {
+                    codeStyleManager.reformat(builderClass);
+                }
+            }
+        });
+        for (final PsiClass targetClass : classFields.keySet()) {
+            storeOptions(project, targetClass, options);
+        }
+
+        final List<String> optionHints = new ArrayList<String>();
+        for (final InnerBuilderGenerator builderGenerator : builderGenerators) {
+            optionHints.addAll(builderGenerator.optionHints);
+        }
+        if (!optionHints.isEmpty()) {
+            HintManager.getInstance().showInformationHint(editor, StringUtil.join(optionHints, "\n"));
+        }
     }
 
-    private InnerBuilderGenerator(final Project project, final PsiFile file, final Editor editor,
-                                  final List<PsiFieldMember> selectedFields) {
+    private InnerBuilderGenerator(final Project project, final PsiFile file, final PsiClass targetClass,
+                                  final List<PsiFieldMember> selectedFields, final Set<InnerBuilderOption> options) {
         this.project = project;
         this.file = file;
-        this.editor = editor;
+        this.targetClass = targetClass;
         this.selectedFields = selectedFields;
+        this.options = options;
         psiElementFactory = JavaPsiFacade.getInstance(project).getElementFactory();
+        templates = InnerBuilderTemplates.getInstance(project);
     }
 
-    @Override
-    public void run() {
-        final PsiClass topLevelClass = InnerBuilderUtils.getTopLevelClass(project, file, editor);
-        if (topLevelClass == null) {
-            return;
+    /**
+     * Creates all builder fields and methods as non-physical elements. Checks for cancellation and reports
+     * progress for every selected field.
+     */
+    private void prepare() {
+        final ProgressIndicator indicator = ProgressManager.getInstance().getProgressIndicator();
+        builderType = psiElementFactory.createTypeFromText(BUILDER_CLASS_NAME, null);
+        if (targetClass.findInnerClassByName(BUILDER_CLASS_NAME, false) == null) {
+            builderClassPrototype = createBuilderClass();
+        }
+        constructor = generateConstructor(targetClass, builderType);
+        if (options.contains(InnerBuilderOption.MEMOIZED_BUILD)) {
+            builtInstanceName = unusedFieldName(BUILT_INSTANCE_DEFAULT_NAME, BUILT_INSTANCE_ALTERNATIVE_NAME);
+        }
+        if (options.contains(InnerBuilderOption.LAZY_COPY) && options.contains(InnerBuilderOption.COPY_CONSTRUCTOR)) {
+            copySourceName = unusedFieldName(COPY_SOURCE_DEFAULT_NAME, COPY_SOURCE_ALTERNATIVE_NAME);
         }
-        final Set<InnerBuilderOption> options = currentOptions();
-        final PsiClass builderClass = findOrCreateBuilderClass(topLevelClass);
-        final PsiType builderType = psiElementFactory.createTypeFromText(BUILDER_CLASS_NAME, null);
-        final PsiMethod constructor = generateConstructor(topLevelClass, builderType);
 
-        addMethod(topLevelClass, null, constructor, true);
         final Collection<PsiFieldMember> finalFields = new ArrayList<PsiFieldMember>();
         final Collection<PsiFieldMember> nonFinalFields = new ArrayList<PsiFieldMember>();
+        final List<PsiField> supplierFields = new ArrayList<PsiField>();
+
+        final int fieldCount = selectedFields.size();
+        for (int i = 0; i < fieldCount; i++) {
+            ProgressManager.checkCanceled();
+            final PsiFieldMember fieldMember = selectedFields.get(i);
+            if (indicator != null) {
+                indicator.setText(targetClass.getName());
+                indicator.setText2(fieldMember.getElement().getName());
+                indicator.setFraction((double) i / fieldCount);
+            }
 
-        PsiElement lastAddedField = null;
-        for (final PsiFieldMember fieldMember : selectedFields) {
-            lastAddedField = findOrCreateField(builderClass, fieldMember, lastAddedField);
+            final PsiField builderField = generateBuilderField(fieldMember);
             if (fieldMember.getElement().hasModifierProperty(PsiModifier.FINAL)
                     && !options.contains(InnerBuilderOption.FINAL_SETTERS)) {
                 finalFields.add(fieldMember);
-                PsiUtil.setModifierProperty((PsiField) lastAddedField, PsiModifier.FINAL, true);
+                PsiUtil.setModifierProperty(builderField, PsiModifier.FINAL, true);
             } else {
                 nonFinalFields.add(fieldMember);
+                final PsiField supplierField = generateSupplierField(fieldMember);
+                if (supplierField != null) {
+                    supplierFields.add(supplierField);
+                    supplierFieldNames.put(fieldMember.getElement().getName(), supplierField.getName());
+                }
+                setterMethods.add(generateBuilderSetter(builderType, fieldMember, options));
+                if (supplierField != null) {
+                    setterMethods.add(generateSupplierSetter(builderType, fieldMember, supplierField));
+                }
             }
+            builderFields.add(builderField);
         }
+
+        // the suppliers of lazily set values, called by build()
+        if (!supplierFields.isEmpty()) {
+            builderFields.addAll(supplierFields);
+            resolveSuppliersMethod = generateResolveSuppliersMethod();
+        }
+
+        // the last built instance, reset by every builder method
+        if (builtInstanceName != null) {
+            builderFields.add(psiElementFactory.createField(builtInstanceName,
+                    psiElementFactory.createType(targetClass)));
+        }
+
+        // the copied instance, its fields are only copied by the first builder method called
+        if (copySourceName != null) {
+            builderFields.add(psiElementFactory.createField(copySourceName,
+                    psiElementFactory.createType(targetClass)));
+            materializeMethod = generateMaterializeMethod(nonFinalFields);
+        }
+
+        ProgressManager.checkCanceled();
         if (options.contains(InnerBuilderOption.NEW_BUILDER_METHOD)) {
-            final PsiMethod newBuilderMethod = generateNewBuilderMethod(builderType, finalFields, options);
-            addMethod(topLevelClass, null, newBuilderMethod, false);
+            newBuilderMethod = generateNewBuilderMethod(builderType, finalFields, options);
         }
 
         // builder constructor, accepting the final fields
-        final PsiMethod builderConstructorMethod = generateBuilderConstructor(builderClass, finalFields, options);
-        addMethod(builderClass, null, builderConstructorMethod, false);
+        builderConstructorMethod = generateBuilderConstructor(finalFields, options);
 
         // builder copy constructor or static copy method
         if (options.contains(InnerBuilderOption.COPY_CONSTRUCTOR)) {
             if (options.contains(InnerBuilderOption.NEW_BUILDER_METHOD)) {
-                final PsiMethod copyBuilderMethod = generateCopyBuilderMethod(topLevelClass, builderType,
-                        nonFinalFields, options);
-                addMethod(topLevelClass, null, copyBuilderMethod, true);
+                copyBuilderMethod = generateCopyBuilderMethod(targetClass, builderType, nonFinalFields, options);
             } else {
-                final PsiMethod copyConstructorBuilderMethod = generateCopyConstructor(topLevelClass, builderType,
-                        selectedFields, options);
-                addMethod(builderClass, null, copyConstructorBuilderMethod, true);
+                copyConstructorBuilderMethod = generateCopyConstructor(targetClass, builderType, selectedFields,
+                        options);
             }
         }
 
-        // builder methods
-        PsiElement lastAddedElement = null;
-        for (final PsiFieldMember member : nonFinalFields) {
-            final PsiMethod setterMethod = generateBuilderSetter(builderType, member, options);
-            lastAddedElement = addMethod(builderClass, lastAddedElement, setterMethod, false);
+        if (options.contains(InnerBuilderOption.INTERNED_BUILD)) {
+            internerClass = generateInternerClass(targetClass);
         }
 
         // builder.build() method
-        final PsiMethod buildMethod = generateBuildMethod(topLevelClass, options);
-        addMethod(builderClass, lastAddedElement, buildMethod, false);
+        buildMethod = generateBuildMethod(targetClass, options);
+
+        if (options.contains(InnerBuilderOption.BULK_BUILDER)) {
+            if (hasTypeParameterField()) {
+                optionHints.add(String.format("No BulkBuilder generated, %s has fields of a type parameter "
+                        + "type", targetClass.getName()));
+            } else {
+                bulkBuilderClass = generateBulkBuilderClass(targetClass);
+                bulkConstructor = generateBulkConstructor(targetClass);
+            }
+        }
+
+        if (options.contains(InnerBuilderOption.MAP_CONVERSION)) {
+            fromMapMethod = generateFromMapMethod(finalFields, nonFinalFields);
+            toMapMethod = generateToMapMethod();
+        }
+
+        if (options.contains(InnerBuilderOption.BINARY_CODEC)) {
+            final List<String> unencodableFields = new ArrayList<String>();
+            for (final PsiFieldMember member : selectedFields) {
+                final PsiField field = member.getElement();
+                if (!InnerBuilderUtils.isDataType(field.getType())) {
+                    unencodableFields.add(String.format("%s (%s)", field.getName(),
+                            field.getType().getPresentableText()));
+                }
+            }
+            if (unencodableFields.isEmpty()) {
+                generateCodecMethods(targetClass, finalFields, nonFinalFields);
+            } else {
+                optionHints.add(String.format("No binary codec generated, %s has fields that cannot be "
+                        + "encoded: %s", targetClass.getName(), StringUtil.join(unencodableFields, ", ")));
+            }
+        }
+
+        if (options.contains(InnerBuilderOption.WITHERS)) {
+            final List<PsiField> copiedFields = copyableInstanceFields(targetClass);
+            if (copiedFields == null) {
+                optionHints.add(String.format("No 'with...' methods generated, %s has instance fields a "
+                        + "constructor cannot copy", targetClass.getName()));
+            } else {
+                // a constructor with the same parameter types but other names might assign them differently
+                allFieldsConstructor = generateAllFieldsConstructor(targetClass, copiedFields, false);
+                final PsiMethod existingConstructor = findConstructor(targetClass, allFieldsConstructor);
+                final boolean marked = existingConstructor != null
+                        && !InnerBuilderUtils.areParameterNamesEqual(existingConstructor.getParameterList(),
+                        allFieldsConstructor.getParameterList());
+                if (marked) {
+                    allFieldsConstructor = generateAllFieldsConstructor(targetClass, copiedFields, true);
+                }
+                for (final PsiFieldMember member : selectedFields) {
+                    ProgressManager.checkCanceled();
+                    witherMethods.add(generateWitherMethod(targetClass, member, copiedFields, marked));
+                }
+            }
+        }
+
+        if (options.contains(InnerBuilderOption.MERGE_COLLECTOR)) {
+            mergeMethod = generateMergeMethod(nonFinalFields);
+            generateCollectorMethods(targetClass, finalFields);
+        }
+    }
+
+    @Override
+    public void run() {
+        final PsiClass builderClass = insert();
+        if (builderClass == null) {
+            return;
+        }
 
         JavaCodeStyleManager.getInstance(project).shortenClassReferences(file);
         CodeStyleManager.getInstance(project).reformat(builderClass);
     }
 
-    private PsiMethod generateCopyBuilderMethod(final PsiClass topLevelClass, final PsiType builderType,
+    /**
+     * Inserts the elements created by {@link #prepare()}, must be called from a write action.
+     *
+     * @return the builder class, or null if the target class is no longer valid.
+     */
+    @Nullable
+    private PsiClass insert() {
+        if (!targetClass.isValid()) {
+            return null;
+        }
+        final PsiClass builderClass = findOrCreateBuilderClass(targetClass);
+        addMethod(targetClass, null, constructor, true);
+
+        PsiElement lastAddedField = null;
+        for (final PsiField builderField : builderFields) {
+            lastAddedField = findOrCreateField(builderClass, builderField, lastAddedField);
+            if (builderField.hasModifierProperty(PsiModifier.FINAL)) {
+                PsiUtil.setModifierProperty((PsiField) lastAddedField, PsiModifier.FINAL, true);
+            }
+        }
+        if (newBuilderMethod != null) {
+            addMethod(targetClass, null, newBuilderMethod, false);
+        }
+
+        addMethod(builderClass, null, builderConstructorMethod, false);
+
+        if (copyBuilderMethod != null) {
+            addMethod(targetClass, null, copyBuilderMethod, true);
+        }
+        if (copyConstructorBuilderMethod != null) {
+            addMethod(builderClass, null, copyConstructorBuilderMethod, true);
+        }
+
+        // builder methods, existing ones are replaced when they have to reset the built instance
+        final boolean replaceBuilderMethods = builtInstanceName != null || copySourceName != null
+                || internerClass != null || resolveSuppliersMethod != null;
+        PsiElement lastAddedElement = null;
+        for (final PsiMethod setterMethod : setterMethods) {
+            lastAddedElement = addMethod(builderClass, lastAddedElement, setterMethod, replaceBuilderMethods);
+        }
+
+        addMethod(builderClass, lastAddedElement, buildMethod, replaceBuilderMethods);
+
+        if (materializeMethod != null) {
+            addMethod(builderClass, null, materializeMethod, true);
+        }
+        if (resolveSuppliersMethod != null) {
+            addMethod(builderClass, null, resolveSuppliersMethod, true);
+        }
+
+        if (bulkBuilderClass != null) {
+            addClass(targetClass, builderClass, bulkBuilderClass);
+            addMethod(targetClass, null, bulkConstructor, true);
+        }
+
+        if (internerClass != null) {
+            addClass(targetClass, builderClass, internerClass);
+        }
+
+        if (fromMapMethod != null) {
+            addMethod(builderClass, null, fromMapMethod, true);
+            addMethod(targetClass, null, toMapMethod, true);
+        }
+
+        for (final PsiMethod codecMethod : codecMethods) {
+            addMethod(targetClass, null, codecMethod, true);
+        }
+        if (readFromMethod != null) {
+            addMethod(builderClass, null, readFromMethod, true);
+        }
+
+        if (allFieldsConstructor != null) {
+            // an existing constructor with the same parameter names is kept, it might do more than assign the fields
+            addMethod(targetClass, null, allFieldsConstructor, false);
+        }
+        for (final PsiMethod witherMethod : witherMethods) {
+            addMethod(targetClass, null, witherMethod, true);
+        }
+
+        if (mergeMethod != null) {
+            addMethod(builderClass, null, mergeMethod, true);
+        }
+        for (final PsiMethod collectorMethod : collectorMethods) {
+            addMethod(builderClass, null, collectorMethod, true);
+        }
+        return builderClass;
+    }
+
+    private PsiMethod generateCopyBuilderMethod(final PsiClass targetClass, final PsiType builderType,
                                                 final Collection<PsiFieldMember> fields,
                                                 final Set<InnerBuilderOption> options) {
         final PsiMethod copyBuilderMethod = psiElementFactory.createMethod("newBuilder", builderType);
         PsiUtil.setModifierProperty(copyBuilderMethod, PsiModifier.STATIC, true);
         PsiUtil.setModifierProperty(copyBuilderMethod, PsiModifier.PUBLIC, true);
 
-        final PsiType topLevelClassType = psiElementFactory.createType(topLevelClass);
-        final PsiParameter parameter = psiElementFactory.createParameter("copy", topLevelClassType);
+        final PsiType targetClassType = psiElementFactory.createType(targetClass);
+        final PsiParameter parameter = psiElementFactory.createParameter("copy", targetClassType);
         final PsiModifierList parameterModifierList = parameter.getModifierList();
 
         if (parameterModifierList != null) {
@@ -170,15 +527,15 @@ public class InnerBuilderGenerator implements Runnable {
         return copyBuilderMethod;
     }
 
-    private PsiMethod generateCopyConstructor(final PsiClass topLevelClass, final PsiType builderType,
+    private PsiMethod generateCopyConstructor(final PsiClass targetClass, final PsiType builderType,
                                               final Collection<PsiFieldMember> nonFinalFields,
                                               final Set<InnerBuilderOption> options) {
 
         final PsiMethod copyConstructor = psiElementFactory.createConstructor(builderType.getPresentableText());
         PsiUtil.setModifierProperty(copyConstructor, PsiModifier.PUBLIC, true);
 
-        final PsiType topLevelClassType = psiElementFactory.createType(topLevelClass);
-        final PsiParameter constructorParameter = psiElementFactory.createParameter("copy", topLevelClassType);
+        final PsiType targetClassType = psiElementFactory.createType(targetClass);
+        final PsiParameter constructorParameter = psiElementFactory.createParameter("copy", targetClassType);
         final PsiModifierList parameterModifierList = constructorParameter.getModifierList();
 
         if (parameterModifierList != null) {
@@ -199,17 +556,42 @@ public class InnerBuilderGenerator implements Runnable {
         }
         for (final PsiFieldMember member : fields) {
             final PsiField field = member.getElement();
+
+            // with lazy copying only the final builder fields are copied right away
+            if (copySourceName != null && !(field.hasModifierProperty(PsiModifier.FINAL)
+                    && !options.contains(InnerBuilderOption.FINAL_SETTERS))) {
+                continue;
+            }
+
             final PsiStatement assignStatement = psiElementFactory.createStatementFromText(String.format(
                     "%s%2$s = copy.%2$s;", qName, field.getName()), method);
             methodBody.add(assignStatement);
         }
+        if (copySourceName != null) {
+            methodBody.add(psiElementFactory.createStatementFromText(String.format(
+                    "%s%s = copy;", qName, copySourceName), method));
+        }
+    }
+
+    /**
+     * Generates the method copying the fields of the copied instance into the builder, called by every builder
+     * method before it changes a field.
+     */
+    private PsiMethod generateMaterializeMethod(final Collection<PsiFieldMember> nonFinalFields) {
+        final StringBuilder assignments = new StringBuilder();
+        for (final PsiFieldMember member : nonFinalFields) {
+            assignments.append(String.format("this.%1$s = this.%2$s.%1$s;\n", member.getElement().getName(),
+                    copySourceName));
+        }
+        return psiElementFactory.createMethodFromText(String.format("private void %1$s() {\n"
+                + "if (this.%2$s != null) {\n%3$sthis.%2$s = null;\n}\n}", MATERIALIZE_METHOD_NAME,
+                copySourceName, assignments), null);
     }
 
-    private PsiMethod generateBuilderConstructor(final PsiClass builderClass,
-                                                 final Collection<PsiFieldMember> finalFields,
+    private PsiMethod generateBuilderConstructor(final Collection<PsiFieldMember> finalFields,
                                                  final Set<InnerBuilderOption> options) {
 
-        final PsiMethod builderConstructor = psiElementFactory.createConstructor(builderClass.getName());
+        final PsiMethod builderConstructor = psiElementFactory.createConstructor(BUILDER_CLASS_NAME);
         if (options.contains(InnerBuilderOption.NEW_BUILDER_METHOD)) {
             PsiUtil.setModifierProperty(builderConstructor, PsiModifier.PRIVATE, true);
         } else {
@@ -291,12 +673,7 @@ public class InnerBuilderGenerator implements Runnable {
         final PsiType fieldType = field.getType();
         final String fieldName = field.getName();
 
-        final String methodName;
-        if (options.contains(InnerBuilderOption.WITH_NOTATION)) {
-            methodName = String.format("with%s", InnerBuilderUtils.capitalize(fieldName));
-        } else {
-            methodName = fieldName;
-        }
+        final String methodName = builderSetterName(fieldName);
 
         final String parameterName = options.contains(InnerBuilderOption.FIELD_NAMES) ? 
 		fieldName :
@@ -326,30 +703,252 @@ public class InnerBuilderGenerator implements Runnable {
 	    final String actualFieldName =  options.contains(InnerBuilderOption.FIELD_NAMES) ?
 		    "this." + fieldName :
 		    fieldName;
+            if (copySourceName != null) {
+                setterMethodBody.add(psiElementFactory.createStatementFromText(String.format(
+                        "%s();", MATERIALIZE_METHOD_NAME), setterMethod));
+            }
+            if (builtInstanceName != null) {
+                setterMethodBody.add(psiElementFactory.createStatementFromText(String.format(
+                        "this.%s = null;", builtInstanceName), setterMethod));
+            }
+            final String supplierFieldName = supplierFieldNames.get(fieldName);
+            if (supplierFieldName != null) {
+                setterMethodBody.add(psiElementFactory.createStatementFromText(String.format(
+                        "this.%s = null;", supplierFieldName), setterMethod));
+            }
             final PsiStatement assignStatement = psiElementFactory.createStatementFromText(String.format(
                     "%s = %s;", actualFieldName, parameterName), setterMethod);
             setterMethodBody.add(assignStatement);
             setterMethodBody.add(InnerBuilderUtils.createReturnThis(psiElementFactory, setterMethod));
         }
-        setSetterComment(setterMethod, fieldName, parameterName);
+        final Map<String, String> templateVariables = setterTemplateVariables(fieldName, parameterName);
+        addSetterAnnotations(setterMethod, templateVariables);
+        setSetterComment(setterMethod, templateVariables);
         return setterMethod;
     }
 
 
-    private PsiMethod generateConstructor(final PsiClass topLevelClass, final PsiType builderType) {
-        final PsiMethod constructor = psiElementFactory.createConstructor(topLevelClass.getName());
+    /**
+     * Returns the builder field holding the supplier of a lazily set value, or null if the option is not selected
+     * or the field is a supplier itself, as the overloaded builder methods would then have the same erasure.
+     */
+    @Nullable
+    private PsiField generateSupplierField(final PsiFieldMember member) {
+        final PsiType fieldType = member.getElement().getType();
+        if (!options.contains(InnerBuilderOption.LAZY_SETTERS)
+                || InheritanceUtil.isInheritor(fieldType, JAVA_UTIL_FUNCTION_SUPPLIER)) {
+            return null;
+        }
+
+        final String fieldName = member.getElement().getName();
+        final String supplierName = unusedFieldName(fieldName + SUPPLIER_DEFAULT_SUFFIX,
+                fieldName + SUPPLIER_ALTERNATIVE_SUFFIX);
+        final String valueTypeText = fieldType instanceof PsiPrimitiveType
+                ? ((PsiPrimitiveType) fieldType).getBoxedTypeName()
+                : fieldType.getCanonicalText();
+        return psiElementFactory.createFieldFromText(String.format("private %s<? extends %s> %s;",
+                JAVA_UTIL_FUNCTION_SUPPLIER, valueTypeText, supplierName), null);
+    }
+
+    /**
+     * Generates the builder method overload storing a supplier, it replaces a previously set value.
+     */
+    private PsiMethod generateSupplierSetter(final PsiType builderType, final PsiFieldMember member,
+                                             final PsiField supplierField) {
+        final String fieldName = member.getElement().getName();
+        final String supplierName = supplierField.getName();
+
+        final StringBuilder statements = new StringBuilder();
+        if (copySourceName != null) {
+            statements.append(String.format("%s();\n", MATERIALIZE_METHOD_NAME));
+        }
+        if (builtInstanceName != null) {
+            statements.append(String.format("this.%s = null;\n", builtInstanceName));
+        }
+        final PsiMethod setterMethod = psiElementFactory.createMethodFromText(String.format(
+                "public %1$s %2$s(%3$s %4$s) {\n%5$sthis.%4$s = %4$s;\nreturn this;\n}",
+                builderType.getPresentableText(), builderSetterName(fieldName),
+                supplierField.getType().getCanonicalText(), supplierName, statements), null);
+
+        final boolean useJsr305 = options.contains(InnerBuilderOption.JSR305_ANNOTATIONS);
+        final boolean useFindbugs = options.contains(InnerBuilderOption.FINDBUGS_ANNOTATION);
+        final PsiModifierList parameterModifierList = setterMethod.getParameterList().getParameters()[0]
+                .getModifierList();
+        if (useJsr305) setterMethod.getModifierList().addAnnotation(JSR305_NONNULL);
+        if (useFindbugs) setterMethod.getModifierList().addAnnotation(FINDBUGS_NONNULL);
+        if (parameterModifierList != null) {
+            if (useJsr305) parameterModifierList.addAnnotation(JSR305_NONNULL);
+            if (useFindbugs) parameterModifierList.addAnnotation(FINDBUGS_NONNULL);
+        }
+
+        // annotated and documented from the same templates as the builder method it overloads
+        final Map<String, String> templateVariables = setterTemplateVariables(fieldName, supplierName);
+        addSetterAnnotations(setterMethod, templateVariables);
+        setSetterComment(setterMethod, templateVariables);
+        return setterMethod;
+    }
+
+    /**
+     * Generates the method setting the fields from their suppliers, each supplier is called once and cleared.
+     */
+    private PsiMethod generateResolveSuppliersMethod() {
+        final StringBuilder statements = new StringBuilder();
+        for (final Map.Entry<String, String> entry : supplierFieldNames.entrySet()) {
+            statements.append(String.format("if (this.%2$s != null) {\nthis.%1$s = this.%2$s.get();\n"
+                    + "this.%2$s = null;\n}\n", entry.getKey(), entry.getValue()));
+        }
+        return psiElementFactory.createMethodFromText(String.format("private void %s() {\n%s}",
+                RESOLVE_SUPPLIERS_METHOD_NAME, statements), null);
+    }
+
+    private String unusedFieldName(final String defaultName, final String alternativeName) {
+        for (final PsiFieldMember member : selectedFields) {
+            if (defaultName.equals(member.getElement().getName())) {
+                return alternativeName;
+            }
+        }
+        return defaultName;
+    }
+
+    private String builderSetterName(final String fieldName) {
+        return builderSetterName(templates, fieldName, options);
+    }
+
+    static String builderSetterName(final InnerBuilderTemplates templates, final String fieldName,
+                                    final Set<InnerBuilderOption> options) {
+        final Map<String, String> variables = new HashMap<String, String>(4);
+        variables.put(InnerBuilderTemplates.FIELD_NAME, fieldName);
+        variables.put(InnerBuilderTemplates.CAPITALIZED_FIELD_NAME, InnerBuilderUtils.capitalize(fieldName));
+        return templates.render(InnerBuilderTemplates.Kind.SETTER_NAME, options, variables).trim();
+    }
+
+    /**
+     * Generates a static {@code Builder.fromMap(Map)} that passes the final fields to the builder constructor and
+     * dispatches every other key to its setter with a string switch, unboxing primitives from any {@code Number}.
+     * A missing value of a final primitive field is reported with an {@code IllegalArgumentException} naming it.
+     */
+    private PsiMethod generateFromMapMethod(final Collection<PsiFieldMember> finalFields,
+                                            final Collection<PsiFieldMember> nonFinalFields) {
+        // final primitive fields cannot be unboxed from a missing value
+        final StringBuilder requiredChecks = new StringBuilder();
+        final StringBuilder constructorArguments = new StringBuilder();
+        for (final PsiFieldMember member : finalFields) {
+            final PsiField field = member.getElement();
+            if (InnerBuilderUtils.isPrimitive(field)) {
+                requiredChecks.append(String.format("if (map.get(\"%1$s\") == null) {\n"
+                        + "throw new IllegalArgumentException(\"No value for the field %1$s\");\n}\n",
+                        field.getName()));
+            }
+            if (constructorArguments.length() > 0) {
+                constructorArguments.append(", ");
+            }
+            constructorArguments.append(InnerBuilderUtils.castFromObjectText(field.getType(),
+                    String.format("map.get(\"%s\")", field.getName())));
+        }
+
+        final StringBuilder cases = new StringBuilder();
+        for (final PsiFieldMember member : nonFinalFields) {
+            final PsiField field = member.getElement();
+            final String setterCall = String.format("builder.%s(%s);", builderSetterName(field.getName()),
+                    InnerBuilderUtils.castFromObjectText(field.getType(), "value"));
+            if (InnerBuilderUtils.isPrimitive(field)) {
+                cases.append(String.format("case \"%s\":\nif (value != null) {\n%s\n}\nbreak;\n",
+                        field.getName(), setterCall));
+            } else {
+                cases.append(String.format("case \"%s\":\n%s\nbreak;\n", field.getName(), setterCall));
+            }
+        }
+
+        final StringBuilder methodText = new StringBuilder();
+        methodText.append(String.format("public static %1$s fromMap(java.util.Map<String, ?> map) {\n"
+                + "%3$sfinal %1$s builder = new %1$s(%2$s);\n", BUILDER_CLASS_NAME, constructorArguments,
+                requiredChecks));
+        if (cases.length() > 0) {
+            // a null key is not a field name, switching on it would throw
+            methodText.append(String.format("for (java.util.Map.Entry<String, ?> entry : map.entrySet()) {\n"
+                    + "if (entry.getKey() == null) {\ncontinue;\n}\n"
+                    + "final Object value = entry.getValue();\n"
+                    + "switch (entry.getKey()) {\n%s}\n}\n", cases));
+        }
+        methodText.append("return builder;\n}");
+        final PsiMethod fromMapMethod = psiElementFactory.createMethodFromText(methodText.toString(), null);
+        if (options.contains(InnerBuilderOption.WITH_JAVADOC)) {
+            setStringComment(fromMapMethod, String.format("/**\n* Returns a {@code Builder} with the fields set from "
+                    + "the values of the given map, keyed by field name.\n*\n* @param map the field values\n"
+                    + "* @return a reference to a new Builder\n%s*/", requiredChecks.length() > 0
+                    ? "* @throws IllegalArgumentException if the map has no value for a final primitive field\n"
+                    : ""));
+        }
+        return fromMapMethod;
+    }
+
+    /**
+     * Generates {@code toMap()} on the built class, the map is presized for the selected fields.
+     */
+    private PsiMethod generateToMapMethod() {
+        final StringBuilder methodText = new StringBuilder();
+        methodText.append(String.format("public java.util.Map<String, Object> toMap() {\n"
+                        + "final java.util.Map<String, Object> map = new java.util.HashMap<String, Object>(%d);\n",
+                (int) (selectedFields.size() / 0.75f) + 1));
+        for (final PsiFieldMember member : selectedFields) {
+            methodText.append(String.format("map.put(\"%1$s\", this.%1$s);\n", member.getElement().getName()));
+        }
+        methodText.append("return map;\n}");
+        final PsiMethod toMapMethod = psiElementFactory.createMethodFromText(methodText.toString(), null);
+        if (options.contains(InnerBuilderOption.WITH_JAVADOC)) {
+            setStringComment(toMapMethod, "/**\n* Returns the fields of this instance in a map, keyed by field name."
+                    + "\n*\n* @return a new map with the field values\n*/");
+        }
+        return toMapMethod;
+    }
+
+    private PsiMethod generateConstructor(final PsiClass targetClass, final PsiType builderType) {
+        final PsiMethod constructor = psiElementFactory.createConstructor(targetClass.getName());
         constructor.getModifierList().setModifierProperty(PsiModifier.PRIVATE, true);
 
         final PsiParameter builderParameter = psiElementFactory.createParameter("builder", builderType);
         constructor.getParameterList().add(builderParameter);
 
+        addFieldAssignments(targetClass, constructor, "builder.%s", false);
+        return constructor;
+    }
+
+    /**
+     * Generates the constructor building an instance from a row of the {@code BulkBuilder} columns, so building
+     * many instances needs no {@code Builder}. Columns of generic types are erased and cast back to the field type.
+     */
+    private PsiMethod generateBulkConstructor(final PsiClass targetClass) {
+        final String columnsName = unusedFieldName("bulk", "bulkBuilder");
+        final String rowName = unusedFieldName("row", "rowIndex");
+
+        boolean hasErasedColumn = false;
+        for (final PsiFieldMember member : selectedFields) {
+            final PsiType fieldType = member.getElement().getType();
+            hasErasedColumn |= !TypeConversionUtil.erasure(fieldType).equals(fieldType);
+        }
+
+        final PsiMethod constructor = psiElementFactory.createMethodFromText(String.format(
+                "%1$sprivate %2$s(%3$s %4$s, int %5$s) {\n}",
+                hasErasedColumn ? "@SuppressWarnings(\"unchecked\")\n" : "", targetClass.getName(),
+                BULK_BUILDER_CLASS_NAME, columnsName, rowName), null);
+        addFieldAssignments(targetClass, constructor, String.format("%s.%%s[%s]", columnsName, rowName), true);
+        return constructor;
+    }
+
+    /**
+     * Adds the statements assigning the selected fields to the constructor, through the setter of the class if
+     * there is one. The value of each field is the source format applied to the field name, cast to the field type
+     * if the source has the erased type.
+     */
+    private void addFieldAssignments(final PsiClass targetClass, final PsiMethod constructor,
+                                     final String sourceFormat, final boolean erasedSource) {
         final PsiCodeBlock constructorBody = constructor.getBody();
         if (constructorBody != null) {
             for (final PsiFieldMember member : selectedFields) {
                 final PsiField field = member.getElement();
 
                 final PsiMethod setterPrototype = PropertyUtil.generateSetterPrototype(field);
-                final PsiMethod setter = topLevelClass.findMethodBySignature(setterPrototype, true);
+                final PsiMethod setter = targetClass.findMethodBySignature(setterPrototype, true);
 
                 final String fieldName = field.getName();
                 boolean isFinal = false;
@@ -358,24 +957,308 @@ public class InnerBuilderGenerator implements Runnable {
                     isFinal = modifierList.hasModifierProperty(PsiModifier.FINAL);
                 }
 
+                final PsiType fieldType = field.getType();
+                final String sourceText = String.format(sourceFormat, fieldName);
+                final boolean castSource = erasedSource && !TypeConversionUtil.erasure(fieldType).equals(fieldType);
+                final String valueText = copyValueText(fieldType, castSource
+                        ? String.format("((%s) %s)", fieldType.getCanonicalText(), sourceText)
+                        : sourceText);
                 final String assignText;
                 if (setter == null || isFinal) {
-                    assignText = String.format("%1$s = builder.%1$s;", fieldName);
+                    assignText = String.format("%s = %s;", fieldName, valueText);
                 } else {
-                    assignText = String.format("%s(builder.%s);", setter.getName(), fieldName);
+                    assignText = String.format("%s(%s);", setter.getName(), valueText);
                 }
 
                 final PsiStatement assignStatement = psiElementFactory.createStatementFromText(assignText, null);
                 constructorBody.add(assignStatement);
             }
         }
+    }
 
-        return constructor;
+    private boolean hasTypeParameterField() {
+        for (final PsiFieldMember member : selectedFields) {
+            if (InnerBuilderUtils.hasTypeParameter(member.getElement().getType())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the text of a defensive copy of the value as selected in the options, or the value itself. The copy is
+     * only made by the constructor, so builder methods never pay for it.
+     */
+    private String copyValueText(final PsiType type, final String valueText) {
+        if (type instanceof PsiArrayType && options.contains(InnerBuilderOption.COPY_ARRAYS)) {
+            return String.format("%1$s == null ? null : %1$s.clone()", valueText);
+        }
+
+        if (type instanceof PsiClassType && options.contains(InnerBuilderOption.COPY_COLLECTIONS)) {
+            final PsiClassType classType = (PsiClassType) type;
+            final String rawTypeText = classType.rawType().getCanonicalText();
+            final String typeArguments = InnerBuilderUtils.typeArgumentsText(classType);
+            final String copyText;
+            if (CommonClassNames.JAVA_UTIL_LIST.equals(rawTypeText)) {
+                copyText = "java.util.Collections.unmodifiableList(new java.util.ArrayList%s(%s))";
+            } else if (CommonClassNames.JAVA_UTIL_SET.equals(rawTypeText)) {
+                copyText = "java.util.Collections.unmodifiableSet(new java.util.LinkedHashSet%s(%s))";
+            } else if (CommonClassNames.JAVA_UTIL_MAP.equals(rawTypeText)) {
+                copyText = "java.util.Collections.unmodifiableMap(new java.util.LinkedHashMap%s(%s))";
+            } else if (CommonClassNames.JAVA_UTIL_COLLECTION.equals(rawTypeText)) {
+                copyText = "java.util.Collections.unmodifiableCollection(new java.util.ArrayList%s(%s))";
+            } else {
+                return valueText;
+            }
+            return String.format("%s == null ? null : %s", valueText,
+                    String.format(copyText, typeArguments, valueText));
+        }
+
+        return valueText;
+    }
+
+    /**
+     * Returns the instance fields of the class a constructor has to assign to copy an instance, superclass fields
+     * first, or null if a superclass field is final, hidden or not accessible so a copy would lose its value. Final
+     * fields assigned in their declaration are skipped, they are the same in every instance.
+     */
+    @Nullable
+    private List<PsiField> copyableInstanceFields(final PsiClass targetClass) {
+        final PsiResolveHelper resolveHelper = JavaPsiFacade.getInstance(project).getResolveHelper();
+        final List<PsiField> fields = new ArrayList<PsiField>();
+        final Set<String> fieldNames = new HashSet<String>();
+        for (PsiClass clazz = targetClass; clazz != null; clazz = clazz.getSuperClass()) {
+            final List<PsiField> classFields = new ArrayList<PsiField>();
+            for (final PsiField field : clazz.getFields()) {
+                if (field.hasModifierProperty(PsiModifier.STATIC)) {
+                    continue;
+                }
+                final boolean isFinal = field.hasModifierProperty(PsiModifier.FINAL);
+                if (isFinal && field.getInitializer() != null) {
+                    continue;
+                }
+                final boolean isHidden = !fieldNames.add(field.getName());
+                if (clazz != targetClass && (isFinal || isHidden
+                        || !resolveHelper.isAccessible(field, targetClass, targetClass))) {
+                    return null;
+                }
+                classFields.add(field);
+            }
+            fields.addAll(0, classFields);
+        }
+        return fields;
+    }
+
+    /**
+     * Generates a private constructor assigning all copied fields. A marked constructor has an additional unused
+     * {@code Void} parameter, so its signature differs from an existing constructor with the same parameter types.
+     */
+    private PsiMethod generateAllFieldsConstructor(final PsiClass targetClass, final List<PsiField> copiedFields,
+                                                   final boolean marked) {
+        final PsiMethod allFieldsConstructor = psiElementFactory.createConstructor(targetClass.getName());
+        allFieldsConstructor.getModifierList().setModifierProperty(PsiModifier.PRIVATE, true);
+
+        final PsiCodeBlock constructorBody = allFieldsConstructor.getBody();
+        for (final PsiField field : copiedFields) {
+            allFieldsConstructor.getParameterList().add(psiElementFactory.createParameter(field.getName(),
+                    field.getType()));
+            if (constructorBody != null) {
+                constructorBody.add(psiElementFactory.createStatementFromText(String.format(
+                        "this.%1$s = %1$s;", field.getName()), allFieldsConstructor));
+            }
+        }
+        if (marked) {
+            String markerName = WITHER_MARKER_DEFAULT_NAME;
+            for (final PsiField field : copiedFields) {
+                if (WITHER_MARKER_DEFAULT_NAME.equals(field.getName())) {
+                    markerName = WITHER_MARKER_ALTERNATIVE_NAME;
+                }
+            }
+            allFieldsConstructor.getParameterList().add(psiElementFactory.createParameter(markerName,
+                    psiElementFactory.createTypeFromText(CommonClassNames.JAVA_LANG_VOID, null)));
+        }
+        return allFieldsConstructor;
+    }
+
+    /**
+     * Generates a method on the built class returning a copy with one changed field through the all fields
+     * constructor, or this instance when the new value is identical to the current one. All other instance fields
+     * are copied, selected for the builder or not.
+     */
+    private PsiMethod generateWitherMethod(final PsiClass targetClass, final PsiFieldMember member,
+                                           final List<PsiField> copiedFields, final boolean marked) {
+        final PsiField field = member.getElement();
+        final String fieldName = field.getName();
+
+        final StringBuilder constructorArguments = new StringBuilder();
+        for (final PsiField copiedField : copiedFields) {
+            final String copiedName = copiedField.getName();
+            if (constructorArguments.length() > 0) {
+                constructorArguments.append(", ");
+            }
+            constructorArguments.append(copiedName.equals(fieldName) ? fieldName : "this." + copiedName);
+        }
+        if (marked) {
+            constructorArguments.append(constructorArguments.length() > 0 ? ", (Void) null" : "(Void) null");
+        }
+
+        // floating point values are compared by their bits, so -0.0 and NaN are not mistaken for other values
+        final PsiType fieldType = field.getType();
+        final String identicalText = PsiType.FLOAT.equals(fieldType) || PsiType.DOUBLE.equals(fieldType)
+                ? InnerBuilderUtils.equalsText(fieldType, "this." + fieldName, fieldName)
+                : String.format("this.%1$s == %1$s", fieldName);
+
+        final PsiMethod witherMethod = psiElementFactory.createMethodFromText(String.format(
+                "public %1$s with%2$s(%3$s %4$s) {\n"
+                        + "if (%6$s) {\nreturn this;\n}\n"
+                        + "return new %1$s(%5$s);\n}",
+                targetClass.getName(), InnerBuilderUtils.capitalize(fieldName), fieldType.getCanonicalText(),
+                fieldName, constructorArguments, identicalText), null);
+        if (options.contains(InnerBuilderOption.WITH_JAVADOC)) {
+            setStringComment(witherMethod, String.format("/**\n* Returns a copy of this {@code %1$s} with the "
+                    + "given {@code %2$s}, or this instance if it is identical.\n*\n"
+                    + "* @param %2$s the {@code %2$s} of the copy\n"
+                    + "* @return a {@code %1$s} with the given {@code %2$s}\n*/", targetClass.getName(), fieldName));
+        }
+        return witherMethod;
+    }
+
+    /**
+     * Generates {@code Builder.merge(Builder)} combining the fields of another builder into this one: counters are
+     * summed, the elements of collections and maps are added to a copy and every other field takes the value of the
+     * other builder if it was set there, that is not null, zero or false. Final builder fields are kept. As counters
+     * are only recognized by their names, the summed fields are listed in the Javadoc and in a hint.
+     */
+    private PsiMethod generateMergeMethod(final Collection<PsiFieldMember> nonFinalFields) {
+        final StringBuilder statements = new StringBuilder();
+        if (copySourceName != null) {
+            statements.append(String.format("%1$s();\nother.%1$s();\n", MATERIALIZE_METHOD_NAME));
+        }
+        if (resolveSuppliersMethod != null) {
+            statements.append(String.format("%1$s();\nother.%1$s();\n", RESOLVE_SUPPLIERS_METHOD_NAME));
+        }
+        if (builtInstanceName != null) {
+            statements.append(String.format("this.%s = null;\n", builtInstanceName));
+        }
+        final List<String> counterNames = new ArrayList<String>();
+        for (final PsiFieldMember member : nonFinalFields) {
+            ProgressManager.checkCanceled();
+            statements.append(mergeStatementText(member.getElement()));
+            if (InnerBuilderUtils.isCounter(member.getElement())) {
+                counterNames.add(member.getElement().getName());
+            }
+        }
+        if (!counterNames.isEmpty()) {
+            optionHints.add(String.format("%s.Builder.merge() sums the counters %s", targetClass.getName(),
+                    StringUtil.join(counterNames, ", ")));
+        }
+        // merging resolves the lazily copied fields and the suppliers of the other builder
+        final String otherText;
+        if (copySourceName != null && resolveSuppliersMethod != null) {
+            otherText = ", its copied fields are read and its suppliers called first";
+        } else if (copySourceName != null) {
+            otherText = ", its copied fields are read first";
+        } else if (resolveSuppliersMethod != null) {
+            otherText = ", its suppliers are called first";
+        } else {
+            otherText = ", not changed";
+        }
+        final String countersText = counterNames.isEmpty()
+                ? "No field is treated as a counter"
+                : String.format("The counters {@code %s} are summed", StringUtil.join(counterNames, "}, {@code "));
+
+        final PsiMethod mergeMethod = psiElementFactory.createMethodFromText(String.format(
+                "public %1$s merge(%1$s other) {\n%2$sreturn this;\n}", BUILDER_CLASS_NAME, statements), null);
+        if (options.contains(InnerBuilderOption.WITH_JAVADOC)) {
+            setStringComment(mergeMethod, String.format("/**\n* Merges the fields of another builder into this one. "
+                    + "%s, collections get the elements of both builders and other fields are overwritten by "
+                    + "the values set in the other builder.\n*\n* @param other the builder to merge%s\n"
+                    + "* @return a reference to this Builder\n*/", countersText, otherText));
+        }
+        return mergeMethod;
+    }
+
+    private String mergeStatementText(final PsiField field) {
+        final PsiType type = field.getType();
+        final String fieldName = field.getName();
+
+        if (InnerBuilderUtils.isCounter(field)) {
+            if (type instanceof PsiPrimitiveType) {
+                return String.format("this.%1$s += other.%1$s;\n", fieldName);
+            }
+            return String.format("if (other.%1$s != null) {\n"
+                            + "this.%1$s = this.%1$s == null ? other.%1$s : (%2$s) (this.%1$s + other.%1$s);\n}\n",
+                    fieldName, PsiPrimitiveType.getUnboxedType(type).getCanonicalText());
+        }
+
+        if (PsiType.BOOLEAN.equals(type)) {
+            return String.format("if (other.%1$s) {\nthis.%1$s = true;\n}\n", fieldName);
+        } else if (type instanceof PsiPrimitiveType) {
+            return String.format("if (other.%1$s != 0) {\nthis.%1$s = other.%1$s;\n}\n", fieldName);
+        }
+
+        // the collections of both builders are never changed, they might be shared or unmodifiable
+        final boolean isMap = InheritanceUtil.isInheritor(type, CommonClassNames.JAVA_UTIL_MAP);
+        if (type instanceof PsiClassType
+                && (isMap || InheritanceUtil.isInheritor(type, CommonClassNames.JAVA_UTIL_COLLECTION))) {
+            final PsiClassType classType = (PsiClassType) type;
+            final String copyClassText = InnerBuilderUtils.modifiableCopyClassText(classType);
+            if (copyClassText != null) {
+                return String.format("if (this.%1$s == null) {\nthis.%1$s = other.%1$s;\n"
+                                + "} else if (other.%1$s != null) {\n"
+                                + "final %2$s%3$s merged = new %2$s%3$s(this.%1$s);\n"
+                                + "merged.%4$s(other.%1$s);\nthis.%1$s = merged;\n}\n",
+                        fieldName, copyClassText, InnerBuilderUtils.typeArgumentsText(classType),
+                        isMap ? "putAll" : "addAll");
+            }
+        }
+        return String.format("if (other.%1$s != null) {\nthis.%1$s = other.%1$s;\n}\n", fieldName);
     }
 
-    private PsiMethod generateBuildMethod(final PsiClass topLevelClass, final Set<InnerBuilderOption> options) {
-        final PsiType topLevelClassType = psiElementFactory.createType(topLevelClass);
-        final PsiMethod buildMethod = psiElementFactory.createMethod("build", topLevelClassType);
+    /**
+     * Generates static {@code Builder.collector(...)} factories returning a {@code Collector} that accumulates into
+     * builders and combines them with {@code merge}, so a parallel stream fills one builder per thread. The factory
+     * without a builder supplier is only generated when the builder constructor has no parameters.
+     */
+    private void generateCollectorMethods(final PsiClass targetClass, final Collection<PsiFieldMember> finalFields) {
+        final String collectorType = String.format("java.util.stream.Collector<T, %s, %s>", BUILDER_CLASS_NAME,
+                targetClass.getName());
+        final String accumulatorType = String.format("java.util.function.BiConsumer<%s, T>", BUILDER_CLASS_NAME);
+
+        final PsiMethod supplierCollectorMethod = psiElementFactory.createMethodFromText(String.format(
+                "public static <T> %1$s collector(java.util.function.Supplier<%2$s> supplier, %3$s accumulator) {\n"
+                        + "return java.util.stream.Collector.of(supplier, accumulator, %2$s::merge, %2$s::build);\n}",
+                collectorType, BUILDER_CLASS_NAME, accumulatorType), null);
+        if (options.contains(InnerBuilderOption.WITH_JAVADOC)) {
+            setStringComment(supplierCollectorMethod, String.format("/**\n* Returns a {@code Collector} building a "
+                    + "{@code %s} from the elements of a stream. Every thread of a parallel stream accumulates into "
+                    + "its own builder, the builders are merged in encounter order.\n*\n"
+                    + "* @param supplier creates the builders\n"
+                    + "* @param accumulator sets the fields of a builder from an element\n"
+                    + "* @param <T> the type of the stream elements\n"
+                    + "* @return a {@code Collector} building a {@code %<s}\n*/", targetClass.getName()));
+        }
+        collectorMethods.add(supplierCollectorMethod);
+
+        if (finalFields.isEmpty()) {
+            final PsiMethod collectorMethod = psiElementFactory.createMethodFromText(String.format(
+                    "public static <T> %1$s collector(%3$s accumulator) {\n"
+                            + "return collector(%2$s::new, accumulator);\n}",
+                    collectorType, BUILDER_CLASS_NAME, accumulatorType), null);
+            if (options.contains(InnerBuilderOption.WITH_JAVADOC)) {
+                setStringComment(collectorMethod, String.format("/**\n* Returns a {@code Collector} building a "
+                        + "{@code %s} from the elements of a stream, accumulating into new builders.\n*\n"
+                        + "* @param accumulator sets the fields of a builder from an element\n"
+                        + "* @param <T> the type of the stream elements\n"
+                        + "* @return a {@code Collector} building a {@code %<s}\n*/", targetClass.getName()));
+            }
+            collectorMethods.add(collectorMethod);
+        }
+    }
+
+    private PsiMethod generateBuildMethod(final PsiClass targetClass, final Set<InnerBuilderOption> options) {
+        final PsiType targetClassType = psiElementFactory.createType(targetClass);
+        final PsiMethod buildMethod = psiElementFactory.createMethod("build", targetClassType);
 
         final boolean useJsr305 = options.contains(InnerBuilderOption.JSR305_ANNOTATIONS);
         final boolean useFindbugs = options.contains(InnerBuilderOption.FINDBUGS_ANNOTATION);
@@ -387,45 +1270,329 @@ public class InnerBuilderGenerator implements Runnable {
         buildMethod.getModifierList().setModifierProperty(PsiModifier.PUBLIC, true);
 
         final PsiCodeBlock buildMethodBody = buildMethod.getBody();
-        if (buildMethodBody != null) {
+        if (buildMethodBody != null && copySourceName != null) {
+            buildMethodBody.add(psiElementFactory.createStatementFromText(String.format(
+                    "if (this.%1$s != null) {\nreturn this.%1$s;\n}", copySourceName), buildMethod));
+        }
+        if (buildMethodBody != null && resolveSuppliersMethod != null) {
+            buildMethodBody.add(psiElementFactory.createStatementFromText(String.format(
+                    "%s();", RESOLVE_SUPPLIERS_METHOD_NAME), buildMethod));
+        }
+        final String newInstanceText = options.contains(InnerBuilderOption.INTERNED_BUILD)
+                ? String.format("%s.%s.intern(this)", INTERNER_CLASS_NAME, INTERNER_INSTANCE_NAME)
+                : String.format("new %s(this)", targetClass.getName());
+        if (buildMethodBody != null && builtInstanceName != null) {
+            buildMethodBody.add(psiElementFactory.createStatementFromText(String.format(
+                    "if (this.%1$s == null) {\nthis.%1$s = %2$s;\n}", builtInstanceName, newInstanceText),
+                    buildMethod));
+            buildMethodBody.add(psiElementFactory.createStatementFromText(String.format(
+                    "return this.%s;", builtInstanceName), buildMethod));
+        } else if (buildMethodBody != null) {
             final PsiStatement returnStatement = psiElementFactory.createStatementFromText(String.format(
-                    "return new %s(this);", topLevelClass.getName()), buildMethod);
+                    "return %s;", newInstanceText), buildMethod);
             buildMethodBody.add(returnStatement);
         }
-        setBuildMethodComment(buildMethod, topLevelClass);
+        setBuildMethodComment(buildMethod, targetClass);
         return buildMethod;
     }
 
+    /**
+     * Generates a builder holding one array per selected field, primitive fields use primitive arrays and generic
+     * fields arrays of the erased type. Every row is built directly from the columns by a private constructor.
+     */
+    private PsiClass generateBulkBuilderClass(final PsiClass targetClass) {
+        final String targetName = targetClass.getName();
+        final String sizeName = unusedFieldName(BULK_BUILDER_DEFAULT_SIZE_NAME, BULK_BUILDER_ALTERNATIVE_SIZE_NAME);
+
+        final StringBuilder columns = new StringBuilder();
+        final StringBuilder allocateColumns = new StringBuilder();
+        final StringBuilder growColumns = new StringBuilder();
+        final StringBuilder addParameters = new StringBuilder();
+        final StringBuilder addAssignments = new StringBuilder();
+        final StringBuilder columnSetters = new StringBuilder();
+        for (final PsiFieldMember member : selectedFields) {
+            final PsiField field = member.getElement();
+            final String fieldName = field.getName();
+            final PsiType columnType = TypeConversionUtil.erasure(field.getType());
+            final String columnTypeText = columnType.getCanonicalText();
+
+            columns.append(String.format("private %s[] %s;\n", columnTypeText, fieldName));
+            allocateColumns.append(String.format("this.%s = %s;\n", fieldName,
+                    InnerBuilderUtils.newArrayText(columnType, "capacity")));
+            growColumns.append(String.format("this.%1$s = java.util.Arrays.copyOf(this.%1$s, newCapacity);\n",
+                    fieldName));
+
+            if (addParameters.length() > 0) {
+                addParameters.append(", ");
+            }
+            addParameters.append(String.format("%s %s", field.getType().getCanonicalText(), fieldName));
+            addAssignments.append(String.format("this.%1$s[this.%2$s] = %1$s;\n", fieldName, sizeName));
+
+            columnSetters.append(String.format("public %1$s %2$sColumn(%3$s[] %2$s) {\n"
+                    + "ensureCapacity(%2$s.length);\n"
+                    + "System.arraycopy(%2$s, 0, this.%2$s, 0, %2$s.length);\n"
+                    + "this.%4$s = Math.max(this.%4$s, %2$s.length);\n"
+                    + "return this;\n}\n", BULK_BUILDER_CLASS_NAME, fieldName, columnTypeText, sizeName));
+        }
+
+        final String classText = String.format("public static final class %1$s {\n"
+                + "private int %3$s;\n"
+                + "%4$s"
+                + "public %1$s(int capacity) {\n%5$s}\n"
+                + "public int %3$s() {\nreturn this.%3$s;\n}\n"
+                + "public %1$s add(%6$s) {\nensureCapacity(this.%3$s + 1);\n%7$sthis.%3$s++;\nreturn this;\n}\n"
+                + "%8$s"
+                + "public %2$s[] buildAll() {\n"
+                + "final %2$s[] result = new %2$s[this.%3$s];\n"
+                + "for (int i = 0; i < this.%3$s; i++) {\nresult[i] = new %2$s(this, i);\n}\n"
+                + "return result;\n}\n"
+                + "public java.util.List<%2$s> buildList() {\nreturn java.util.Arrays.asList(buildAll());\n}\n"
+                + "private void ensureCapacity(int capacity) {\n"
+                + "if (capacity > this.%9$s.length) {\n"
+                + "final int newCapacity = Math.max(capacity, this.%9$s.length * 2);\n%10$s}\n}\n"
+                + "}",
+                BULK_BUILDER_CLASS_NAME, targetName, sizeName, columns, allocateColumns, addParameters,
+                addAssignments, columnSetters, selectedFields.get(0).getElement().getName(), growColumns);
+
+        final PsiClass bulkBuilderClass = psiElementFactory.createClassFromText(classText, null).getInnerClasses()[0];
+        if (options.contains(InnerBuilderOption.WITH_JAVADOC)) {
+            setStringComment(bulkBuilderClass, String.format("/**\n* Builds many {@code %s} instances at once "
+                    + "from one array per field.\n*/", targetName));
+        }
+        return bulkBuilderClass;
+    }
+
+    /**
+     * Generates {@code writeTo(DataOutput)} on the built class and a static {@code Builder.readFrom(DataInput)}.
+     * The final fields are written first so they can be read directly into the builder constructor. Fields that
+     * can be null are recorded in a bitmap header, strings are written as length-prefixed UTF-8. All selected
+     * fields must be of a type {@link InnerBuilderUtils#isDataType} accepts.
+     */
+    private void generateCodecMethods(final PsiClass targetClass, final Collection<PsiFieldMember> finalFields,
+                                      final Collection<PsiFieldMember> nonFinalFields) {
+        final List<PsiFieldMember> orderedFields = new ArrayList<PsiFieldMember>(finalFields);
+        orderedFields.addAll(nonFinalFields);
+
+        final List<PsiField> encodedFields = new ArrayList<PsiField>();
+        for (final PsiFieldMember member : orderedFields) {
+            encodedFields.add(member.getElement());
+        }
+
+        final List<PsiField> nullableFields = new ArrayList<PsiField>();
+        for (final PsiField field : encodedFields) {
+            if (!InnerBuilderUtils.isPrimitive(field)) {
+                nullableFields.add(field);
+            }
+        }
+
+        final StringBuilder writeHeader = new StringBuilder();
+        final StringBuilder readHeader = new StringBuilder();
+        for (int chunk = 0; chunk * 64 < nullableFields.size(); chunk++) {
+            final int chunkSize = Math.min(64, nullableFields.size() - chunk * 64);
+            final String dataType = chunkSize <= 8 ? "Byte" : chunkSize <= 16 ? "Short" : chunkSize <= 32 ? "Int"
+                    : "Long";
+            writeHeader.append(String.format("long nulls%d = 0L;\n", chunk));
+            for (int bit = 0; bit < chunkSize; bit++) {
+                writeHeader.append(String.format("if (this.%s == null) {\nnulls%d |= 1L << %d;\n}\n",
+                        nullableFields.get(chunk * 64 + bit).getName(), chunk, bit));
+            }
+            writeHeader.append(String.format("out.write%s(%snulls%d);\n", dataType,
+                    "Long".equals(dataType) ? "" : "(int) ", chunk));
+            readHeader.append(String.format("final long nulls%d = in.read%s();\n", chunk, dataType));
+        }
+
+        final StringBuilder writeFields = new StringBuilder();
+        final Map<PsiField, String> readExpressions = new HashMap<PsiField, String>();
+        boolean usesStrings = false;
+        for (final PsiField field : encodedFields) {
+            final PsiType fieldType = field.getType();
+            final String fieldName = field.getName();
+            final String write;
+            final String read;
+            if (InnerBuilderUtils.isString(fieldType)) {
+                usesStrings = true;
+                write = String.format("writeString(out, this.%s);", fieldName);
+                read = String.format("%s.readString(in)", targetClass.getName());
+            } else if (InnerBuilderUtils.isEnum(fieldType)) {
+                write = String.format("out.writeInt(this.%s.ordinal());", fieldName);
+                read = String.format("%s.values()[in.readInt()]", fieldType.getCanonicalText());
+            } else {
+                final PsiPrimitiveType unboxedType = PsiPrimitiveType.getUnboxedType(fieldType);
+                final String dataType = InnerBuilderUtils.capitalize(
+                        (unboxedType != null ? unboxedType : fieldType).getCanonicalText());
+                write = String.format("out.write%s(this.%s);", dataType, fieldName);
+                read = String.format("in.read%s()", dataType);
+            }
+
+            final int nullableIndex = nullableFields.indexOf(field);
+            final String readExpression;
+            if (nullableIndex < 0) {
+                writeFields.append(write).append('\n');
+                readExpression = read;
+            } else {
+                writeFields.append(String.format("if (this.%s != null) {\n%s\n}\n", fieldName, write));
+                readExpression = String.format("(nulls%d & 1L << %d) != 0 ? null : %s", nullableIndex / 64,
+                        nullableIndex % 64, read);
+            }
+
+            readExpressions.put(field, readExpression);
+        }
+
+        final StringBuilder constructorArguments = new StringBuilder();
+        for (final PsiFieldMember member : finalFields) {
+            if (constructorArguments.length() > 0) {
+                constructorArguments.append(", ");
+            }
+            constructorArguments.append(readExpressions.get(member.getElement()));
+        }
+        final StringBuilder readFields = new StringBuilder();
+        for (final PsiFieldMember member : nonFinalFields) {
+            readFields.append(String.format("builder.%s = %s;\n", member.getElement().getName(),
+                    readExpressions.get(member.getElement())));
+        }
+
+        codecMethods.add(psiElementFactory.createMethodFromText(String.format(
+                "public void writeTo(java.io.DataOutput out) throws java.io.IOException {\n%s%s}",
+                writeHeader, writeFields), null));
+        if (usesStrings) {
+            codecMethods.add(psiElementFactory.createMethodFromText(
+                    "private static void writeString(java.io.DataOutput out, String value) "
+                            + "throws java.io.IOException {\n"
+                            + "final byte[] bytes = value.getBytes(java.nio.charset.StandardCharsets.UTF_8);\n"
+                            + "out.writeInt(bytes.length);\nout.write(bytes);\n}", null));
+            codecMethods.add(psiElementFactory.createMethodFromText(
+                    "private static String readString(java.io.DataInput in) throws java.io.IOException {\n"
+                            + "final byte[] bytes = new byte[in.readInt()];\nin.readFully(bytes);\n"
+                            + "return new String(bytes, java.nio.charset.StandardCharsets.UTF_8);\n}", null));
+        }
+
+        readFromMethod = psiElementFactory.createMethodFromText(String.format(
+                "public static %1$s readFrom(java.io.DataInput in) throws java.io.IOException {\n"
+                        + "%2$sfinal %1$s builder = new %1$s(%3$s);\n%4$sreturn builder;\n}",
+                BUILDER_CLASS_NAME, readHeader, constructorArguments, readFields), null);
+
+        if (options.contains(InnerBuilderOption.WITH_JAVADOC)) {
+            setStringComment(codecMethods.get(0), String.format("/**\n* Writes the fields of this {@code %s} in "
+                    + "the format read by {@link Builder#readFrom}.\n*\n* @param out the output to write to\n"
+                    + "* @throws java.io.IOException if writing to the output fails\n*/", targetClass.getName()));
+            setStringComment(readFromMethod, String.format("/**\n* Returns a {@code Builder} with the fields "
+                    + "read from the format written by {@code %s.writeTo}.\n*\n* @param in the input to read from\n"
+                    + "* @return a reference to a new Builder\n"
+                    + "* @throws java.io.IOException if reading from the input fails\n*/", targetClass.getName()));
+        }
+    }
+
+    /**
+     * Generates the interner used by build(): a weakly referencing hash table split into stripes that are locked
+     * independently. A lookup hashes and compares the builder fields directly, so finding an existing instance
+     * allocates nothing. The interner holds its own instance, created on first use, so static constants of the
+     * target class built before any other static field is initialized can be interned too.
+     */
+    private PsiClass generateInternerClass(final PsiClass targetClass) {
+        final String targetName = targetClass.getName();
+        final StringBuilder hashStatements = new StringBuilder();
+        final StringBuilder matchConditions = new StringBuilder();
+        for (final PsiFieldMember member : selectedFields) {
+            final PsiField field = member.getElement();
+            final String builderValue = String.format("builder.%s", field.getName());
+            final String instanceValue = String.format("instance.%s", field.getName());
+            hashStatements.append(String.format("hash = 31 * hash + %s;\n",
+                    InnerBuilderUtils.hashCodeText(field.getType(), builderValue)));
+            if (matchConditions.length() > 0) {
+                matchConditions.append("\n&& ");
+            }
+            matchConditions.append(InnerBuilderUtils.equalsText(field.getType(), instanceValue, builderValue));
+        }
+
+        final String classText = String.format("private static final class %1$s {\n"
+                + "static final %1$s %6$s = new %1$s();\n"
+                + "private final Stripe[] stripes;\n"
+                + "%1$s() {\n"
+                + "final int stripeCount = Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4);\n"
+                + "stripes = new Stripe[stripeCount];\n"
+                + "for (int i = 0; i < stripeCount; i++) {\nstripes[i] = new Stripe();\n}\n}\n"
+                + "%2$s intern(%3$s builder) {\n"
+                + "final int hash = hash(builder);\n"
+                + "final Stripe stripe = stripes[(hash >>> 16) & (stripes.length - 1)];\n"
+                + "synchronized (stripe) {\nreturn stripe.intern(builder, hash);\n}\n}\n"
+                + "private static int hash(%3$s builder) {\nint hash = 1;\n%4$sreturn hash ^ (hash >>> 16);\n}\n"
+                + "private static boolean matches(%2$s instance, %3$s builder) {\nreturn %5$s;\n}\n"
+                + "private static final class Entry extends java.lang.ref.WeakReference<%2$s> {\n"
+                + "private final int hash;\nprivate Entry next;\n"
+                + "Entry(%2$s instance, int hash, Entry next) {\n"
+                + "super(instance);\nthis.hash = hash;\nthis.next = next;\n}\n}\n"
+                + "private static final class Stripe {\n"
+                + "private Entry[] table = new Entry[16];\nprivate int size;\n"
+                + "%2$s intern(%3$s builder, int hash) {\n"
+                + "final int index = hash & (table.length - 1);\n"
+                + "Entry previous = null;\n"
+                + "for (Entry entry = table[index]; entry != null; entry = entry.next) {\n"
+                + "final %2$s instance = entry.get();\n"
+                + "if (instance == null) {\n"
+                + "if (previous == null) {\ntable[index] = entry.next;\n} else {\nprevious.next = entry.next;\n}\n"
+                + "size--;\n"
+                + "} else if (entry.hash == hash && matches(instance, builder)) {\nreturn instance;\n"
+                + "} else {\nprevious = entry;\n}\n}\n"
+                + "final %2$s instance = new %2$s(builder);\n"
+                + "table[index] = new Entry(instance, hash, table[index]);\n"
+                + "if (++size > table.length - (table.length >>> 2)) {\nresize();\n}\n"
+                + "return instance;\n}\n"
+                + "private void resize() {\n"
+                + "final Entry[] oldTable = table;\n"
+                + "table = new Entry[oldTable.length * 2];\n"
+                + "size = 0;\n"
+                + "for (Entry entry : oldTable) {\n"
+                + "while (entry != null) {\n"
+                + "final Entry next = entry.next;\n"
+                + "if (entry.get() != null) {\n"
+                + "final int index = entry.hash & (table.length - 1);\n"
+                + "entry.next = table[index];\ntable[index] = entry;\nsize++;\n}\n"
+                + "entry = next;\n}\n}\n}\n}\n}",
+                INTERNER_CLASS_NAME, targetName, BUILDER_CLASS_NAME, hashStatements, matchConditions,
+                INTERNER_INSTANCE_NAME);
+
+        final PsiClass internerClass = psiElementFactory.createClassFromText(classText, null).getInnerClasses()[0];
+        if (options.contains(InnerBuilderOption.WITH_JAVADOC)) {
+            setStringComment(internerClass, String.format("/**\n* Canonical {@code %s} instances, weakly "
+                    + "referenced so unused ones can be collected.\n*/", targetName));
+        }
+        return internerClass;
+    }
+
     @NotNull
-    private PsiClass findOrCreateBuilderClass(final PsiClass topLevelClass) {
-        final PsiClass builderClass = topLevelClass.findInnerClassByName(BUILDER_CLASS_NAME, false);
+    private PsiClass findOrCreateBuilderClass(final PsiClass targetClass) {
+        final PsiClass builderClass = targetClass.findInnerClassByName(BUILDER_CLASS_NAME, false);
         if (builderClass == null) {
-            return createBuilderClass(topLevelClass);
+            final PsiClass prototype = builderClassPrototype != null ? builderClassPrototype : createBuilderClass();
+            return (PsiClass) targetClass.add(prototype);
         }
 
         return builderClass;
     }
 
     @NotNull
-    private PsiClass createBuilderClass(final PsiClass topLevelClass) {
-        final PsiClass builderClass = (PsiClass) topLevelClass.add(psiElementFactory.createClass(BUILDER_CLASS_NAME));
+    private PsiClass createBuilderClass() {
+        final PsiClass builderClass = psiElementFactory.createClass(BUILDER_CLASS_NAME);
         PsiUtil.setModifierProperty(builderClass, PsiModifier.STATIC, true);
         PsiUtil.setModifierProperty(builderClass, PsiModifier.FINAL, true);
-        setBuilderComment(builderClass, topLevelClass);
+        setBuilderComment(builderClass, targetClass);
         return builderClass;
     }
 
-    private PsiElement findOrCreateField(final PsiClass builderClass, final PsiFieldMember member,
-                                         @Nullable final PsiElement last) {
+    private PsiField generateBuilderField(final PsiFieldMember member) {
         final PsiField field = member.getElement();
-        final String fieldName = field.getName();
-        final PsiType fieldType = field.getType();
+        return psiElementFactory.createField(field.getName(), field.getType());
+    }
+
+    private PsiElement findOrCreateField(final PsiClass builderClass, final PsiField newField,
+                                         @Nullable final PsiElement last) {
+        final String fieldName = newField.getName();
+        final PsiType fieldType = newField.getType();
         final PsiField existingField = builderClass.findFieldByName(fieldName, false);
         if (existingField == null || !areTypesPresentableEqual(existingField.getType(), fieldType)) {
             if (existingField != null) {
                 existingField.delete();
             }
-            final PsiField newField = psiElementFactory.createField(fieldName, fieldType);
             if (last != null) {
                 return builderClass.addAfter(newField, last);
             } else {
@@ -435,17 +1602,31 @@ public class InnerBuilderGenerator implements Runnable {
         return existingField;
     }
 
+    private PsiElement addClass(@NotNull final PsiClass target, @NotNull final PsiElement after,
+                                @NotNull final PsiClass newClass) {
+        final PsiClass existingClass = target.findInnerClassByName(newClass.getName(), false);
+        if (existingClass != null) {
+            return existingClass.replace(newClass);
+        }
+        return target.addAfter(newClass, after);
+    }
+
+    @Nullable
+    private static PsiMethod findConstructor(@NotNull final PsiClass target, @NotNull final PsiMethod newConstructor) {
+        for (final PsiMethod constructor : target.getConstructors()) {
+            if (InnerBuilderUtils.areParameterListsEqual(constructor.getParameterList(),
+                    newConstructor.getParameterList())) {
+                return constructor;
+            }
+        }
+        return null;
+    }
+
     private PsiElement addMethod(@NotNull final PsiClass target, @Nullable final PsiElement after,
                                  @NotNull final PsiMethod newMethod, final boolean replace) {
         PsiMethod existingMethod = target.findMethodBySignature(newMethod, false);
         if (existingMethod == null && newMethod.isConstructor()) {
-            for (final PsiMethod constructor : target.getConstructors()) {
-                if (InnerBuilderUtils.areParameterListsEqual(constructor.getParameterList(),
-                        newMethod.getParameterList())) {
-                    existingMethod = constructor;
-                    break;
-                }
-            }
+            existingMethod = findConstructor(target, newMethod);
         }
         if (existingMethod == null) {
             if (after != null) {
@@ -459,7 +1640,7 @@ public class InnerBuilderGenerator implements Runnable {
         return existingMethod;
     }
 
-    private static EnumSet<InnerBuilderOption> currentOptions() {
+    static EnumSet<InnerBuilderOption> currentOptions() {
         final EnumSet<InnerBuilderOption> options = EnumSet.noneOf(InnerBuilderOption.class);
         final PropertiesComponent propertiesComponent = PropertiesComponent.getInstance();
         for (final InnerBuilderOption option : InnerBuilderOption.values()) {
@@ -471,34 +1652,85 @@ public class InnerBuilderGenerator implements Runnable {
         return options;
     }
 
-    private void setBuilderComment(final PsiClass clazz, final PsiClass topLevelClass) {
-        if (currentOptions().contains(InnerBuilderOption.WITH_JAVADOC)) {
-            StringBuilder str = new StringBuilder("/**\n").append("* {@code ");
-            str.append(topLevelClass.getName()).append("} builder static inner class.\n");
-            str.append("*/");
-            setStringComment(clazz, str.toString());
+    /**
+     * Returns the options the builder of the given class was last generated with, or the current options if it was
+     * never generated in this project.
+     */
+    static EnumSet<InnerBuilderOption> storedOptions(final Project project, final PsiClass clazz) {
+        final String storedValue = PropertiesComponent.getInstance(project).getValue(storedOptionsProperty(clazz));
+        if (storedValue == null) {
+            return currentOptions();
+        }
+
+        final EnumSet<InnerBuilderOption> options = EnumSet.noneOf(InnerBuilderOption.class);
+        for (final String optionName : storedValue.split(",")) {
+            for (final InnerBuilderOption option : InnerBuilderOption.values()) {
+                if (option.name().equals(optionName)) {
+                    options.add(option);
+                }
+            }
+        }
+        return options;
+    }
+
+    private static void storeOptions(final Project project, final PsiClass clazz,
+                                     final Set<InnerBuilderOption> options) {
+        final StringBuilder storedValue = new StringBuilder();
+        for (final InnerBuilderOption option : options) {
+            storedValue.append(option.name()).append(',');
+        }
+        PropertiesComponent.getInstance(project).setValue(storedOptionsProperty(clazz), storedValue.toString());
+    }
+
+    private static String storedOptionsProperty(final PsiClass clazz) {
+        return String.format("GenerateInnerBuilder.options.%s", clazz.getQualifiedName());
+    }
+
+    private void setBuilderComment(final PsiClass clazz, final PsiClass targetClass) {
+        final Map<String, String> variables = new HashMap<String, String>(2);
+        variables.put(InnerBuilderTemplates.CLASS_NAME, targetClass.getName());
+        final String comment = templates.render(InnerBuilderTemplates.Kind.BUILDER_JAVADOC, options, variables);
+        if (!comment.trim().isEmpty()) {
+            setStringComment(clazz, comment);
+        }
+    }
+
+    private static Map<String, String> setterTemplateVariables(final String fieldName, final String parameterName) {
+        final Map<String, String> variables = new HashMap<String, String>(4);
+        variables.put(InnerBuilderTemplates.FIELD_NAME, fieldName);
+        variables.put(InnerBuilderTemplates.CAPITALIZED_FIELD_NAME, InnerBuilderUtils.capitalize(fieldName));
+        variables.put(InnerBuilderTemplates.PARAMETER_NAME, parameterName);
+        return variables;
+    }
+
+    /**
+     * Adds the annotations of the setter annotations template in front of the other modifiers, in template order.
+     */
+    private void addSetterAnnotations(final PsiMethod method, final Map<String, String> variables) {
+        final PsiModifierList modifierList = method.getModifierList();
+        PsiElement lastAnnotation = null;
+        for (final String annotation : templates.render(InnerBuilderTemplates.Kind.SETTER_ANNOTATIONS, options,
+                variables).split("\n")) {
+            if (!annotation.trim().isEmpty()) {
+                lastAnnotation = modifierList.addAfter(
+                        psiElementFactory.createAnnotationFromText(annotation.trim(), method), lastAnnotation);
+            }
         }
     }
 
-    private void setSetterComment(final PsiMethod method, final String fieldName, final String parameterName) {
-        if (currentOptions().contains(InnerBuilderOption.WITH_JAVADOC)) {
-            StringBuilder str = new StringBuilder("/**\n").append("* Sets the {@code ").append(fieldName);
-            str.append("} and returns a reference to this Builder so that the methods can be chained together.\n");
-            str.append("* @param ").append(parameterName).append(" the {@code ");
-            str.append(fieldName).append("} to set\n");
-            str.append("* @return a reference to this Builder\n*/");
-            setStringComment(method, str.toString());
+    private void setSetterComment(final PsiMethod method, final Map<String, String> variables) {
+        final String comment = templates.render(InnerBuilderTemplates.Kind.SETTER_JAVADOC, options, variables);
+        if (!comment.trim().isEmpty()) {
+            setStringComment(method, comment);
         }
     }
 
-    private void setBuildMethodComment(final PsiMethod method, final PsiClass topLevelClass) {
-        if (currentOptions().contains(InnerBuilderOption.WITH_JAVADOC)) {
-            StringBuilder str = new StringBuilder("/**\n");
-            str.append("* Returns a {@code ").append(topLevelClass.getName()).append("} built ");
-            str.append("from the parameters previously set.\n*\n");
-            str.append("* @return a {@code ").append(topLevelClass.getName()).append("} ");
-            str.append("built with parameters of this {@code ").append(topLevelClass.getName()).append(".Builder}\n*/");
-            setStringComment(method, str.toString());
+    private void setBuildMethodComment(final PsiMethod method, final PsiClass targetClass) {
+        final Map<String, String> variables = new HashMap<String, String>(2);
+        variables.put(InnerBuilderTemplates.CLASS_NAME, targetClass.getName());
+        final String comment = templates.render(InnerBuilderTemplates.Kind.BUILD_JAVADOC, options, variables);
+        if (!comment.trim().isEmpty()) {
+            setStringComment(method, comment);
         }
     }
 
@@ -34,7 +34,7 @@ public class InnerBuilderHandler implements LanguageCodeInsightActionHandler {
             return false;
         }
 
-        return InnerBuilderUtils.getTopLevelClass(project, file, editor) != null && isApplicable(file, editor);
+        return InnerBuilderUtils.getTargetClass(project, file, editor) != null && isApplicable(file, editor);
     }
 
     @Override
@@ -65,16 +65,26 @@ public class InnerBuilderHandler implements LanguageCodeInsightActionHandler {
             return;
         }
 
+        generate(project, editor, file);
+    }
+
+    protected void generate(final Project project, final Editor editor, final PsiFile file) {
         final List<PsiFieldMember> existingFields = collectFields(file, editor);
         if (existingFields != null) {
-            final List<PsiFieldMember> selectedFields = selectFieldsAndOptions(existingFields, project);
+            generate(project, editor, file, existingFields);
+        }
+    }
 
-            if (selectedFields == null || selectedFields.isEmpty()) {
-                return;
-            }
+    protected void generate(final Project project, final Editor editor, final PsiFile file,
+                            final List<PsiFieldMember> existingFields) {
+        final List<PsiFieldMember> selectedFields = selectFieldsAndOptions(existingFields,
+                InnerBuilderUtils.getTargetClass(project, file, editor), project);
 
-            InnerBuilderGenerator.generate(project, editor, file, selectedFields);
+        if (selectedFields == null || selectedFields.isEmpty()) {
+            return;
         }
+
+        InnerBuilderGenerator.generate(project, editor, file, selectedFields);
     }
 
 }
@@ -0,0 +1,98 @@
+package org.jetbrains.plugins.innerbuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.JCheckBox;
+import javax.swing.JLabel;
+import javax.swing.JTree;
+import javax.swing.event.TreeSelectionEvent;
+import javax.swing.event.TreeSelectionListener;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.intellij.codeInsight.generation.PsiFieldMember;
+
+import com.intellij.ide.util.MemberChooser;
+
+import com.intellij.openapi.project.Project;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiField;
+import com.intellij.psi.PsiSubstitutor;
+import com.intellij.psi.PsiType;
+
+import com.intellij.ui.SimpleColoredComponent;
+import com.intellij.ui.SimpleTextAttributes;
+
+/**
+ * Member chooser showing the size of every field next to it, and the estimated size of an instance and of a builder
+ * with the selected fields above the fields.
+ */
+public class InnerBuilderMemberChooser extends MemberChooser<PsiFieldMember> {
+    private final PsiFieldMember[] fieldMembers;
+    private final List<PsiType> instanceFieldTypes;
+    private final JLabel footprintLabel;
+
+    public InnerBuilderMemberChooser(final List<PsiFieldMember> members, @Nullable final PsiClass targetClass,
+                                     final Project project, final JCheckBox[] optionCheckBoxes) {
+        this(footprintMembers(members), targetClass, project, new JLabel(), optionCheckBoxes);
+    }
+
+    private InnerBuilderMemberChooser(final PsiFieldMember[] fieldMembers, @Nullable final PsiClass targetClass,
+                                      final Project project, final JLabel footprintLabel,
+                                      final JCheckBox[] optionCheckBoxes) {
+        super(fieldMembers,
+                false, // allowEmptySelection
+                true,  // allowMultiSelection
+                project, footprintLabel, optionCheckBoxes);
+        this.fieldMembers = fieldMembers;
+        this.footprintLabel = footprintLabel;
+        instanceFieldTypes = InnerBuilderFootprint.instanceFieldTypes(targetClass);
+
+        myTree.addTreeSelectionListener(new TreeSelectionListener() {
+            @Override
+            public void valueChanged(final TreeSelectionEvent event) {
+                selectionChanged();
+            }
+        });
+        selectionChanged();
+    }
+
+    private static PsiFieldMember[] footprintMembers(final List<PsiFieldMember> members) {
+        final PsiFieldMember[] footprintMembers = new PsiFieldMember[members.size()];
+        for (int i = 0; i < footprintMembers.length; i++) {
+            final PsiFieldMember member = members.get(i);
+            footprintMembers[i] = new FootprintFieldMember(member.getElement(), member.getSubstitutor());
+        }
+        return footprintMembers;
+    }
+
+    public void selectAllFields() {
+        selectElements(fieldMembers);
+    }
+
+    private void selectionChanged() {
+        final List<PsiFieldMember> selectedMembers = getSelectedElements();
+        final List<PsiType> builderFieldTypes = new ArrayList<PsiType>();
+        if (selectedMembers != null) {
+            for (final PsiFieldMember member : selectedMembers) {
+                builderFieldTypes.add(member.getElement().getType());
+            }
+        }
+        footprintLabel.setText(InnerBuilderFootprint.summaryText(instanceFieldTypes, builderFieldTypes));
+    }
+
+    private static final class FootprintFieldMember extends PsiFieldMember {
+        private FootprintFieldMember(final PsiField field, final PsiSubstitutor substitutor) {
+            super(field, substitutor);
+        }
+
+        @Override
+        public void renderTreeNode(final SimpleColoredComponent component, final JTree tree) {
+            super.renderTreeNode(component, tree);
+            component.append(String.format("  %s", InnerBuilderFootprint.fieldText(getElement().getType())),
+                    SimpleTextAttributes.GRAYED_ATTRIBUTES);
+        }
+    }
+}
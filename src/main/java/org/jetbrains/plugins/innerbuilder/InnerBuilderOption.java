@@ -9,7 +9,19 @@ public enum InnerBuilderOption {
     JSR305_ANNOTATIONS("useJSR305Annotations"),
     FINDBUGS_ANNOTATION("useFindbugsAnnotation"),
     WITH_JAVADOC("withJavadoc"),
-    FIELD_NAMES("fieldNames");
+    FIELD_NAMES("fieldNames"),
+    BULK_BUILDER("bulkBuilder"),
+    MAP_CONVERSION("mapConversion"),
+    MEMOIZED_BUILD("memoizedBuild"),
+    BINARY_CODEC("binaryCodec"),
+    WITHERS("withers"),
+    LAZY_COPY("lazyCopy"),
+    COPY_ARRAYS("copyArrays"),
+    COPY_COLLECTIONS("copyCollections"),
+    INTERNED_BUILD("internedBuild"),
+    CUSTOM_TEMPLATES("customTemplates"),
+    MERGE_COLLECTOR("mergeCollector"),
+    LAZY_SETTERS("lazySetters");
 
     private final String property;
 
@@ -1,10 +1,10 @@
 package org.jetbrains.plugins.innerbuilder;
 
 import com.intellij.codeInsight.generation.PsiFieldMember;
-import com.intellij.ide.util.MemberChooser;
 import com.intellij.ide.util.PropertiesComponent;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiClass;
 import com.intellij.ui.NonFocusableCheckBox;
 import org.jetbrains.annotations.Nullable;
 
@@ -15,10 +15,16 @@ import java.util.ArrayList;
 import java.util.List;
 
 public final class InnerBuilderOptionSelector {
-    private static final List<SelectorOption> OPTIONS = createGeneratorOptions();
+    // above this the member chooser is too slow to open, its tree nodes are created and selected one by one
+    private static final int LARGE_FIELD_COUNT = 250;
+
+    // created on first use of the chooser, not when the plugin is loaded
+    private static final class OptionsHolder {
+        private static final List<SelectorOption> OPTIONS = createGeneratorOptions();
+    }
 
     private static List<SelectorOption> createGeneratorOptions() {
-        final List<SelectorOption> options = new ArrayList<SelectorOption>(8);
+        final List<SelectorOption> options = new ArrayList<SelectorOption>(20);
 
         options.add(
                 SelectorOption.newBuilder()
@@ -82,6 +88,117 @@ public final class InnerBuilderOptionSelector {
 				+ "builder.withName(String fieldName)")
 			.withOption(InnerBuilderOption.FIELD_NAMES)
 			.build());
+        options.add(
+                SelectorOption.newBuilder()
+                        .withCaption("Generate BulkBuilder")
+                        .withMnemonic('k')
+                        .withToolTip(
+                                "Generate a BulkBuilder holding one array per field to build many instances at once, "
+                                        + "for example: new Foo.BulkBuilder(1000).add(1, \"a\").buildAll()")
+                        .withOption(InnerBuilderOption.BULK_BUILDER)
+                        .build());
+        options.add(
+                SelectorOption.newBuilder()
+                        .withCaption("Generate fromMap() and toMap() methods")
+                        .withMnemonic('m')
+                        .withToolTip(
+                                "Generate a static Builder.fromMap(Map<String, ?>) that dispatches every key to its "
+                                        + "setter and a matching toMap() method on the built class")
+                        .withOption(InnerBuilderOption.MAP_CONVERSION)
+                        .build());
+        options.add(
+                SelectorOption.newBuilder()
+                        .withCaption("Reuse built instance until a setter is called")
+                        .withMnemonic('r')
+                        .withToolTip(
+                                "Generate a build() method that returns the previously built instance when no "
+                                        + "builder method was called since, only for immutable classes")
+                        .withOption(InnerBuilderOption.MEMOIZED_BUILD)
+                        .build());
+        options.add(
+                SelectorOption.newBuilder()
+                        .withCaption("Generate writeTo() and readFrom() binary codec")
+                        .withMnemonic('d')
+                        .withToolTip(
+                                "Generate writeTo(DataOutput) and a static Builder.readFrom(DataInput) that encode "
+                                        + "primitives, boxed primitives, strings and enums with a null bitmap header")
+                        .withOption(InnerBuilderOption.BINARY_CODEC)
+                        .build());
+        options.add(
+                SelectorOption.newBuilder()
+                        .withCaption("Generate 'with...' methods on the class")
+                        .withMnemonic('h')
+                        .withToolTip(
+                                "Generate methods returning a copy with one changed field, or this instance when the "
+                                        + "value is identical, for example: foo.withName(String name)")
+                        .withOption(InnerBuilderOption.WITHERS)
+                        .build());
+        options.add(
+                SelectorOption.newBuilder()
+                        .withCaption("Copy fields lazily in copy builder")
+                        .withMnemonic('l')
+                        .withToolTip(
+                                "The copy builder keeps a reference to the copied instance and only copies its "
+                                        + "fields when a builder method is called, build() returns the copied "
+                                        + "instance itself when nothing was changed")
+                        .withOption(InnerBuilderOption.LAZY_COPY)
+                        .build());
+        options.add(
+                SelectorOption.newBuilder()
+                        .withCaption("Copy array fields in build()")
+                        .withMnemonic('a')
+                        .withToolTip(
+                                "Clone array fields when building, so the built instance does not share arrays "
+                                        + "with the builder, for example: values = builder.values.clone()")
+                        .withOption(InnerBuilderOption.COPY_ARRAYS)
+                        .build());
+        options.add(
+                SelectorOption.newBuilder()
+                        .withCaption("Copy collection fields in build()")
+                        .withMnemonic('i')
+                        .withToolTip(
+                                "Store unmodifiable copies of List, Set, Map and Collection fields when building, "
+                                        + "for example: names = Collections.unmodifiableList(new ArrayList<>(names))")
+                        .withOption(InnerBuilderOption.COPY_COLLECTIONS)
+                        .build());
+        options.add(
+                SelectorOption.newBuilder()
+                        .withCaption("Intern built instances")
+                        .withMnemonic('t')
+                        .withToolTip(
+                                "Generate a build() method that returns an existing equal instance from a weakly "
+                                        + "referencing, lock striped interner instead of creating a duplicate")
+                        .withOption(InnerBuilderOption.INTERNED_BUILD)
+                        .build());
+        options.add(
+                SelectorOption.newBuilder()
+                        .withCaption("Use custom templates")
+                        .withMnemonic('u')
+                        .withToolTip(
+                                "Generate builder method names, annotations and Javadoc from the templates in "
+                                        + "Settings | InnerBuilder Templates")
+                        .withOption(InnerBuilderOption.CUSTOM_TEMPLATES)
+                        .build());
+        options.add(
+                SelectorOption.newBuilder()
+                        .withCaption("Generate merge() and stream Collector")
+                        .withMnemonic('g')
+                        .withToolTip(
+                                "Generate Builder.merge(Builder) that sums counters, adds all elements of collections "
+                                        + "and keeps the last set value of other fields, and a Builder.collector() "
+                                        + "for parallelStream().collect(...)")
+                        .withOption(InnerBuilderOption.MERGE_COLLECTOR)
+                        .build());
+        options.add(
+                SelectorOption.newBuilder()
+                        .withCaption("Generate Supplier builder methods evaluated in build()")
+                        .withMnemonic('p')
+                        .withToolTip(
+                                "Generate a builder method overload taking a Supplier that is called once by build(), "
+                                        + "unless a value was set afterwards, for example: "
+                                        + "builder.withIndex(() -> createIndex())")
+                        .withOption(InnerBuilderOption.LAZY_SETTERS)
+                        .build());
 
         return options;
     }
@@ -91,6 +208,7 @@ public final class InnerBuilderOptionSelector {
 
     @Nullable
     public static List<PsiFieldMember> selectFieldsAndOptions(final List<PsiFieldMember> members,
+                                                              @Nullable final PsiClass targetClass,
                                                               final Project project) {
         if (members == null || members.isEmpty()) {
             return null;
@@ -102,15 +220,20 @@ public final class InnerBuilderOptionSelector {
 
         final JCheckBox[] optionCheckBoxes = buildOptionCheckBoxes();
 
-        final PsiFieldMember[] memberArray = members.toArray(new PsiFieldMember[members.size()]);
+        if (members.size() > LARGE_FIELD_COUNT) {
+            final InnerBuilderFieldChooser chooser = new InnerBuilderFieldChooser(members, targetClass, project,
+                    optionCheckBoxes);
+            if (chooser.showAndGet()) {
+                return chooser.getSelectedElements();
+            }
+            return null;
+        }
 
-        final MemberChooser<PsiFieldMember> chooser = new MemberChooser<PsiFieldMember>(memberArray,
-                false, // allowEmptySelection
-                true,  // allowMultiSelection
-                project, null, optionCheckBoxes);
+        final InnerBuilderMemberChooser chooser = new InnerBuilderMemberChooser(members, targetClass, project,
+                optionCheckBoxes);
 
         chooser.setTitle("Select Fields and Options for the Builder");
-        chooser.selectElements(memberArray);
+        chooser.selectAllFields();
         if (chooser.showAndGet()) {
             return chooser.getSelectedElements();
         }
@@ -120,10 +243,11 @@ public final class InnerBuilderOptionSelector {
 
     private static JCheckBox[] buildOptionCheckBoxes() {
         final PropertiesComponent propertiesComponent = PropertiesComponent.getInstance();
-        final int optionCount = OPTIONS.size();
+        final List<SelectorOption> options = OptionsHolder.OPTIONS;
+        final int optionCount = options.size();
         final JCheckBox[] checkBoxesArray = new JCheckBox[optionCount];
         for (int i = 0; i < optionCount; i++) {
-            checkBoxesArray[i] = buildOptionCheckBox(propertiesComponent, OPTIONS.get(i));
+            checkBoxesArray[i] = buildOptionCheckBox(propertiesComponent, options.get(i));
         }
 
         return checkBoxesArray;
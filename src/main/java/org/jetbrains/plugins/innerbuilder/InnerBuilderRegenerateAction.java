@@ -0,0 +1,12 @@
+package org.jetbrains.plugins.innerbuilder;
+
+/**
+ * Regenerates the existing inner builder class with its previous fields and options, without showing the chooser.
+ */
+public class InnerBuilderRegenerateAction extends InnerBuilderBaseAction {
+
+    @Override
+    protected InnerBuilderHandler createHandler() {
+        return new InnerBuilderRegenerateHandler();
+    }
+}
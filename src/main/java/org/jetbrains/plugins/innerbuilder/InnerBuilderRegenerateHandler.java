@@ -0,0 +1,81 @@
+package org.jetbrains.plugins.innerbuilder;
+
+import static org.jetbrains.plugins.innerbuilder.InnerBuilderCollector.collectFields;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jetbrains.annotations.Nullable;
+
+import com.intellij.codeInsight.generation.PsiFieldMember;
+
+import com.intellij.openapi.editor.Editor;
+import com.intellij.openapi.project.Project;
+
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+
+/**
+ * Regenerates an existing builder without showing the chooser. The fields are inferred from the fields of the
+ * existing Builder class, the options are the ones the builder was last generated with.
+ */
+public class InnerBuilderRegenerateHandler extends InnerBuilderHandler {
+
+    @Override
+    public boolean isValidFor(final Editor editor, final PsiFile file) {
+        if (!super.isValidFor(editor, file)) {
+            return false;
+        }
+
+        final List<PsiFieldMember> existingFields = collectFields(file, editor);
+        return existingFields != null && !builderFields(editor, file, existingFields).isEmpty();
+    }
+
+    @Override
+    protected void generate(final Project project, final Editor editor, final PsiFile file,
+                            final List<PsiFieldMember> existingFields) {
+        final List<PsiFieldMember> selectedFields = builderFields(editor, file, existingFields);
+        if (selectedFields.isEmpty()) {
+            return;
+        }
+
+        final PsiClass targetClass = InnerBuilderUtils.getTargetClass(project, file, editor);
+        if (targetClass == null) {
+            return;
+        }
+
+        InnerBuilderGenerator.generate(project, editor, file, selectedFields,
+                InnerBuilderGenerator.storedOptions(project, targetClass));
+    }
+
+    static List<PsiFieldMember> builderFields(final Editor editor, final PsiFile file,
+                                                      final List<PsiFieldMember> existingFields) {
+        final List<PsiFieldMember> selectedFields = new ArrayList<PsiFieldMember>();
+        final PsiClass builderClass = findBuilderClass(editor, file);
+        if (builderClass == null) {
+            return selectedFields;
+        }
+
+        for (final PsiFieldMember member : existingFields) {
+            if (builderClass.findFieldByName(member.getElement().getName(), false) != null) {
+                selectedFields.add(member);
+            }
+        }
+        return selectedFields;
+    }
+
+    @Nullable
+    private static PsiClass findBuilderClass(final Editor editor, final PsiFile file) {
+        final Project project = editor.getProject();
+        if (project == null) {
+            return null;
+        }
+
+        final PsiClass targetClass = InnerBuilderUtils.getTargetClass(project, file, editor);
+        if (targetClass == null) {
+            return null;
+        }
+
+        return targetClass.findInnerClassByName(InnerBuilderGenerator.BUILDER_CLASS_NAME, false);
+    }
+}
@@ -0,0 +1,165 @@
+package org.jetbrains.plugins.innerbuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetbrains.annotations.NonNls;
+
+/**
+ * A template compiled into a tree of nodes, so rendering is a single pass without parsing.
+ * <p>
+ * {@code {{name}}} is replaced by the variable {@code name}. {@code {{#OPTION}}...{{/OPTION}}} is only rendered when
+ * the {@link InnerBuilderOption} with that name is selected, {@code {{^OPTION}}...{{/OPTION}}} only when it is not.
+ */
+public final class InnerBuilderTemplate {
+    @NonNls
+    private static final String OPEN_TAG = "{{";
+    @NonNls
+    private static final String CLOSE_TAG = "}}";
+
+    private final String text;
+    private final Node[] nodes;
+
+    private InnerBuilderTemplate(final String text, final Node[] nodes) {
+        this.text = text;
+        this.nodes = nodes;
+    }
+
+    public String getText() {
+        return text;
+    }
+
+    public String render(final Map<String, String> variables, final Set<InnerBuilderOption> options) {
+        final StringBuilder out = new StringBuilder(text.length());
+        render(nodes, out, variables, options);
+        return out.toString();
+    }
+
+    private static void render(final Node[] nodes, final StringBuilder out, final Map<String, String> variables,
+                               final Set<InnerBuilderOption> options) {
+        for (final Node node : nodes) {
+            node.render(out, variables, options);
+        }
+    }
+
+    /**
+     * Compiles the template text.
+     *
+     * @throws IllegalArgumentException if a tag is not closed, a section is not ended or ends a different section.
+     */
+    public static InnerBuilderTemplate compile(final String text) {
+        final List<List<Node>> nodeStack = new ArrayList<List<Node>>();
+        final List<SectionNode> sectionStack = new ArrayList<SectionNode>();
+        nodeStack.add(new ArrayList<Node>());
+
+        int position = 0;
+        while (position < text.length()) {
+            final int tagStart = text.indexOf(OPEN_TAG, position);
+            final List<Node> currentNodes = nodeStack.get(nodeStack.size() - 1);
+            if (tagStart < 0) {
+                currentNodes.add(new TextNode(text.substring(position)));
+                break;
+            }
+            if (tagStart > position) {
+                currentNodes.add(new TextNode(text.substring(position, tagStart)));
+            }
+
+            final int tagEnd = text.indexOf(CLOSE_TAG, tagStart + OPEN_TAG.length());
+            if (tagEnd < 0) {
+                throw new IllegalArgumentException(String.format("Unclosed tag at offset %d", tagStart));
+            }
+            final String tag = text.substring(tagStart + OPEN_TAG.length(), tagEnd).trim();
+            position = tagEnd + CLOSE_TAG.length();
+
+            if (tag.startsWith("#") || tag.startsWith("^")) {
+                final SectionNode section = new SectionNode(tag.substring(1).trim(), tag.startsWith("^"));
+                currentNodes.add(section);
+                sectionStack.add(section);
+                nodeStack.add(new ArrayList<Node>());
+            } else if (tag.startsWith("/")) {
+                final String name = tag.substring(1).trim();
+                if (sectionStack.isEmpty() || !sectionStack.get(sectionStack.size() - 1).name.equals(name)) {
+                    throw new IllegalArgumentException(String.format("Unexpected end of section %s", name));
+                }
+                final List<Node> children = nodeStack.remove(nodeStack.size() - 1);
+                sectionStack.remove(sectionStack.size() - 1).children = children.toArray(new Node[children.size()]);
+            } else {
+                currentNodes.add(new VariableNode(tag));
+            }
+        }
+
+        if (!sectionStack.isEmpty()) {
+            throw new IllegalArgumentException(String.format("Section %s is not ended",
+                    sectionStack.get(sectionStack.size() - 1).name));
+        }
+
+        final List<Node> nodes = nodeStack.get(0);
+        return new InnerBuilderTemplate(text, nodes.toArray(new Node[nodes.size()]));
+    }
+
+    private interface Node {
+        void render(StringBuilder out, Map<String, String> variables, Set<InnerBuilderOption> options);
+    }
+
+    private static final class TextNode implements Node {
+        private final String text;
+
+        private TextNode(final String text) {
+            this.text = text;
+        }
+
+        @Override
+        public void render(final StringBuilder out, final Map<String, String> variables,
+                           final Set<InnerBuilderOption> options) {
+            out.append(text);
+        }
+    }
+
+    private static final class VariableNode implements Node {
+        private final String name;
+
+        private VariableNode(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void render(final StringBuilder out, final Map<String, String> variables,
+                           final Set<InnerBuilderOption> options) {
+            final String value = variables.get(name);
+            if (value != null) {
+                out.append(value);
+            }
+        }
+    }
+
+    private static final class SectionNode implements Node {
+        private final String name;
+        private final InnerBuilderOption option;
+        private final boolean inverted;
+        private Node[] children;
+
+        private SectionNode(final String name, final boolean inverted) {
+            this.name = name;
+            this.inverted = inverted;
+
+            InnerBuilderOption namedOption = null;
+            for (final InnerBuilderOption candidate : InnerBuilderOption.values()) {
+                if (candidate.name().equals(name)) {
+                    namedOption = candidate;
+                }
+            }
+            option = namedOption;
+        }
+
+        @Override
+        public void render(final StringBuilder out, final Map<String, String> variables,
+                           final Set<InnerBuilderOption> options) {
+            final boolean selected = option != null && options.contains(option);
+            if (selected != inverted) {
+                InnerBuilderTemplate.render(children, out, variables, options);
+            }
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package org.jetbrains.plugins.innerbuilder;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Set;
+
+import org.jetbrains.annotations.NonNls;
+
+import com.intellij.ide.util.PropertiesComponent;
+
+import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.project.Project;
+
+/**
+ * The templates of a project, a project service so it is only created on first use. Custom templates are stored in
+ * the project properties, compiled on first use and recompiled only after they were edited.
+ */
+public final class InnerBuilderTemplates {
+    public enum Kind {
+        BUILDER_JAVADOC("builderJavadoc", "Builder class Javadoc",
+                "{{#WITH_JAVADOC}}/**\n* {@code {{className}}} builder static inner class.\n*/{{/WITH_JAVADOC}}"),
+        SETTER_NAME("setterName", "Builder method name",
+                "{{#WITH_NOTATION}}with{{FieldName}}{{/WITH_NOTATION}}"
+                        + "{{^WITH_NOTATION}}{{fieldName}}{{/WITH_NOTATION}}"),
+        SETTER_ANNOTATIONS("setterAnnotations", "Builder method annotations, one per line", ""),
+        SETTER_JAVADOC("setterJavadoc", "Builder method Javadoc",
+                "{{#WITH_JAVADOC}}/**\n* Sets the {@code {{fieldName}}} and returns a reference to this Builder so "
+                        + "that the methods can be chained together.\n"
+                        + "* @param {{parameterName}} the {@code {{fieldName}}} to set\n"
+                        + "* @return a reference to this Builder\n*/{{/WITH_JAVADOC}}"),
+        BUILD_JAVADOC("buildJavadoc", "build() method Javadoc",
+                "{{#WITH_JAVADOC}}/**\n* Returns a {@code {{className}}} built from the parameters previously set.\n*\n"
+                        + "* @return a {@code {{className}}} built with parameters of this "
+                        + "{@code {{className}}.Builder}\n*/{{/WITH_JAVADOC}}");
+
+        private final String property;
+        private final String caption;
+        private final String defaultText;
+
+        private Kind(final String property, final String caption, final String defaultText) {
+            this.property = String.format("GenerateInnerBuilder.template.%s", property);
+            this.caption = caption;
+            this.defaultText = defaultText;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+
+        public String getCaption() {
+            return caption;
+        }
+
+        public String getDefaultText() {
+            return defaultText;
+        }
+    }
+
+    @NonNls
+    public static final String CLASS_NAME = "className";
+    @NonNls
+    public static final String FIELD_NAME = "fieldName";
+    @NonNls
+    public static final String CAPITALIZED_FIELD_NAME = "FieldName";
+    @NonNls
+    public static final String PARAMETER_NAME = "parameterName";
+
+    private final PropertiesComponent propertiesComponent;
+    private final Map<Kind, InnerBuilderTemplate> defaultTemplates = new EnumMap<Kind, InnerBuilderTemplate>(Kind.class);
+    private final Map<Kind, InnerBuilderTemplate> customTemplates = new EnumMap<Kind, InnerBuilderTemplate>(Kind.class);
+    private final Map<Kind, String> customTexts = new EnumMap<Kind, String>(Kind.class);
+
+    public InnerBuilderTemplates(final Project project) {
+        propertiesComponent = PropertiesComponent.getInstance(project);
+        for (final Kind kind : Kind.values()) {
+            defaultTemplates.put(kind, InnerBuilderTemplate.compile(kind.getDefaultText()));
+        }
+    }
+
+    public static InnerBuilderTemplates getInstance(final Project project) {
+        return ServiceManager.getService(project, InnerBuilderTemplates.class);
+    }
+
+    /**
+     * Renders the custom template of the kind if {@link InnerBuilderOption#CUSTOM_TEMPLATES} is selected, otherwise
+     * the default template.
+     */
+    public String render(final Kind kind, final Set<InnerBuilderOption> options, final Map<String, String> variables) {
+        final InnerBuilderTemplate template = options.contains(InnerBuilderOption.CUSTOM_TEMPLATES)
+                ? getCustomTemplate(kind)
+                : defaultTemplates.get(kind);
+        return template.render(variables, options);
+    }
+
+    public String getText(final Kind kind) {
+        return propertiesComponent.getValue(kind.getProperty(), kind.getDefaultText());
+    }
+
+    /**
+     * Stores the edited text of a template.
+     *
+     * @throws IllegalArgumentException if the text is not a valid template.
+     */
+    public synchronized void setText(final Kind kind, final String text) {
+        final InnerBuilderTemplate template = InnerBuilderTemplate.compile(text);
+        propertiesComponent.setValue(kind.getProperty(), text);
+        customTemplates.put(kind, template);
+        customTexts.put(kind, text);
+    }
+
+    private synchronized InnerBuilderTemplate getCustomTemplate(final Kind kind) {
+        final String text = getText(kind);
+        if (text.equals(customTexts.get(kind))) {
+            return customTemplates.get(kind);
+        }
+
+        InnerBuilderTemplate template;
+        try {
+            template = InnerBuilderTemplate.compile(text);
+        } catch (IllegalArgumentException e) {
+            template = defaultTemplates.get(kind); // a broken template edited outside the settings
+        }
+        customTemplates.put(kind, template);
+        customTexts.put(kind, text);
+        return template;
+    }
+}
@@ -0,0 +1,173 @@
+package org.jetbrains.plugins.innerbuilder;
+
+import java.awt.BorderLayout;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.swing.BoxLayout;
+import javax.swing.JComponent;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+
+import org.jetbrains.annotations.Nls;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.Nullable;
+
+import com.intellij.openapi.options.Configurable;
+import com.intellij.openapi.options.ConfigurationException;
+import com.intellij.openapi.project.Project;
+
+import com.intellij.psi.JavaPsiFacade;
+import com.intellij.psi.PsiElementFactory;
+import com.intellij.psi.PsiNameHelper;
+
+import com.intellij.util.IncorrectOperationException;
+
+/**
+ * Settings page to edit the templates used when the 'Use custom templates' option is selected.
+ */
+public class InnerBuilderTemplatesConfigurable implements Configurable {
+    @NonNls
+    private static final String SAMPLE_FIELD_NAME = "sampleField";
+    @NonNls
+    private static final String SAMPLE_PARAMETER_NAME = "val";
+
+    private final Project project;
+    private final Map<InnerBuilderTemplates.Kind, JTextArea> textAreas =
+            new EnumMap<InnerBuilderTemplates.Kind, JTextArea>(InnerBuilderTemplates.Kind.class);
+
+    public InnerBuilderTemplatesConfigurable(final Project project) {
+        this.project = project;
+    }
+
+    @Nls
+    @Override
+    public String getDisplayName() {
+        return "InnerBuilder Templates";
+    }
+
+    @Nullable
+    @Override
+    public String getHelpTopic() {
+        return null;
+    }
+
+    @Nullable
+    @Override
+    public JComponent createComponent() {
+        final JPanel templatesPanel = new JPanel();
+        templatesPanel.setLayout(new BoxLayout(templatesPanel, BoxLayout.Y_AXIS));
+        templatesPanel.add(new JLabel("<html>Variables: {{className}}, {{fieldName}}, {{FieldName}}, "
+                + "{{parameterName}}. Sections: {{#OPTION}}...{{/OPTION}} and {{^OPTION}}...{{/OPTION}}, "
+                + "for example {{#WITH_JAVADOC}}.</html>"));
+
+        for (final InnerBuilderTemplates.Kind kind : InnerBuilderTemplates.Kind.values()) {
+            final JTextArea textArea = new JTextArea(4, 80);
+            textAreas.put(kind, textArea);
+
+            final JPanel templatePanel = new JPanel(new BorderLayout());
+            templatePanel.add(new JLabel(kind.getCaption()), BorderLayout.NORTH);
+            templatePanel.add(new JScrollPane(textArea), BorderLayout.CENTER);
+            templatesPanel.add(templatePanel);
+        }
+
+        reset();
+        return templatesPanel;
+    }
+
+    @Override
+    public boolean isModified() {
+        final InnerBuilderTemplates templates = InnerBuilderTemplates.getInstance(project);
+        for (final Map.Entry<InnerBuilderTemplates.Kind, JTextArea> entry : textAreas.entrySet()) {
+            if (!templates.getText(entry.getKey()).equals(entry.getValue().getText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void apply() throws ConfigurationException {
+        // validate all templates before storing any of them
+        final Map<InnerBuilderTemplates.Kind, InnerBuilderTemplate> compiledTemplates =
+                new EnumMap<InnerBuilderTemplates.Kind, InnerBuilderTemplate>(InnerBuilderTemplates.Kind.class);
+        for (final Map.Entry<InnerBuilderTemplates.Kind, JTextArea> entry : textAreas.entrySet()) {
+            try {
+                compiledTemplates.put(entry.getKey(), InnerBuilderTemplate.compile(entry.getValue().getText()));
+            } catch (IllegalArgumentException e) {
+                throw new ConfigurationException(String.format("%s: %s", entry.getKey().getCaption(),
+                        e.getMessage()));
+            }
+        }
+        validateSetterTemplates(compiledTemplates);
+
+        final InnerBuilderTemplates templates = InnerBuilderTemplates.getInstance(project);
+        for (final Map.Entry<InnerBuilderTemplates.Kind, JTextArea> entry : textAreas.entrySet()) {
+            templates.setText(entry.getKey(), entry.getValue().getText());
+        }
+    }
+
+    /**
+     * Renders the setter name and annotation templates for a sample field with no option, each single option and
+     * all options selected, and checks that they yield an identifier and annotations.
+     */
+    private void validateSetterTemplates(final Map<InnerBuilderTemplates.Kind, InnerBuilderTemplate> compiledTemplates)
+            throws ConfigurationException {
+        final Map<String, String> variables = new HashMap<String, String>(4);
+        variables.put(InnerBuilderTemplates.FIELD_NAME, SAMPLE_FIELD_NAME);
+        variables.put(InnerBuilderTemplates.CAPITALIZED_FIELD_NAME, InnerBuilderUtils.capitalize(SAMPLE_FIELD_NAME));
+        variables.put(InnerBuilderTemplates.PARAMETER_NAME, SAMPLE_PARAMETER_NAME);
+
+        final List<Set<InnerBuilderOption>> optionSets = new ArrayList<Set<InnerBuilderOption>>();
+        optionSets.add(EnumSet.noneOf(InnerBuilderOption.class));
+        optionSets.add(EnumSet.allOf(InnerBuilderOption.class));
+        for (final InnerBuilderOption option : InnerBuilderOption.values()) {
+            optionSets.add(EnumSet.of(option));
+        }
+
+        final PsiNameHelper nameHelper = PsiNameHelper.getInstance(project);
+        final PsiElementFactory elementFactory = JavaPsiFacade.getInstance(project).getElementFactory();
+        final InnerBuilderTemplates.Kind nameKind = InnerBuilderTemplates.Kind.SETTER_NAME;
+        final InnerBuilderTemplates.Kind annotationsKind = InnerBuilderTemplates.Kind.SETTER_ANNOTATIONS;
+        for (final Set<InnerBuilderOption> options : optionSets) {
+            final String setterName = compiledTemplates.get(nameKind).render(variables, options).trim();
+            if (!nameHelper.isIdentifier(setterName)) {
+                throw new ConfigurationException(String.format("%s: '%s' is not a valid method name for the field "
+                        + "%s", nameKind.getCaption(), setterName, SAMPLE_FIELD_NAME));
+            }
+
+            final String annotations = compiledTemplates.get(annotationsKind).render(variables, options);
+            for (final String annotation : annotations.split("\n")) {
+                if (annotation.trim().isEmpty()) {
+                    continue;
+                }
+                try {
+                    elementFactory.createAnnotationFromText(annotation.trim(), null);
+                } catch (IncorrectOperationException e) {
+                    throw new ConfigurationException(String.format("%s: '%s' is not an annotation",
+                            annotationsKind.getCaption(), annotation.trim()));
+                }
+            }
+        }
+    }
+
+    @Override
+    public void reset() {
+        final InnerBuilderTemplates templates = InnerBuilderTemplates.getInstance(project);
+        for (final Map.Entry<InnerBuilderTemplates.Kind, JTextArea> entry : textAreas.entrySet()) {
+            entry.getValue().setText(templates.getText(entry.getKey()));
+        }
+    }
+
+    @Override
+    public void disposeUIResources() {
+        textAreas.clear();
+    }
+}
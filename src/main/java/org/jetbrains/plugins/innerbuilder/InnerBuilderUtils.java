@@ -9,21 +9,32 @@ import com.intellij.codeInsight.generation.PsiFieldMember;
 import com.intellij.openapi.editor.Editor;
 import com.intellij.openapi.project.Project;
 
+import com.intellij.psi.CommonClassNames;
+import com.intellij.psi.PsiArrayType;
 import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiClassType;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiElementFactory;
 import com.intellij.psi.PsiField;
 import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiModifier;
 import com.intellij.psi.PsiParameter;
 import com.intellij.psi.PsiParameterList;
 import com.intellij.psi.PsiPrimitiveType;
 import com.intellij.psi.PsiStatement;
 import com.intellij.psi.PsiType;
+import com.intellij.psi.PsiTypeParameter;
+import com.intellij.psi.PsiWildcardType;
+import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.psi.util.PsiUtil;
 
 public final class InnerBuilderUtils {
     @NonNls
     static final String JAVA_DOT_LANG = "java.lang.";
+    @NonNls
+    private static final String[] COUNTER_WORDS = {"count", "counter", "total", "sum"};
+    @NonNls
+    private static final String[] LIMIT_WORDS = {"max", "min", "limit"};
 
     private InnerBuilderUtils() { }
 
@@ -70,6 +81,22 @@ public final class InnerBuilderUtils {
         return true;
     }
 
+    static boolean areParameterNamesEqual(PsiParameterList paramList1, PsiParameterList paramList2) {
+        if (paramList1.getParametersCount() != paramList2.getParametersCount()) {
+            return false;
+        }
+
+        final PsiParameter[] param1Params = paramList1.getParameters();
+        final PsiParameter[] param2Params = paramList2.getParameters();
+        for (int i = 0; i < param1Params.length; i++) {
+            if (!param1Params[i].getName().equals(param2Params[i].getName())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
     static boolean areTypesPresentableEqual(PsiType type1, PsiType type2) {
         if (type1 != null && type2 != null) {
             final String type1Canonical = stripJavaLang(type1.getPresentableText());
@@ -80,15 +107,252 @@ public final class InnerBuilderUtils {
         return false;
     }
 
+    /**
+     * Finds the class a builder is generated for: the innermost top-level or static nested class at the caret,
+     * skipping the generated Builder classes themselves.
+     */
     @Nullable
-    public static PsiClass getTopLevelClass(Project project, PsiFile file, Editor editor) {
+    public static PsiClass getTargetClass(Project project, PsiFile file, Editor editor) {
         final int offset = editor.getCaretModel().getOffset();
         final PsiElement element = file.findElementAt(offset);
         if (element == null) {
             return null;
         }
 
-        return PsiUtil.getTopLevelClass(element);
+        PsiClass clazz = PsiTreeUtil.getParentOfType(element, PsiClass.class);
+        while (clazz != null && !isBuilderTarget(clazz)) {
+            clazz = PsiTreeUtil.getParentOfType(clazz, PsiClass.class);
+        }
+        return clazz;
+    }
+
+    /**
+     * Can a static inner builder be added to the class? True for top-level and static nested classes, false for
+     * interfaces, enums, annotations, anonymous, local or inner classes and the classes generated by this plugin.
+     */
+    static boolean isBuilderTarget(PsiClass clazz) {
+        if (clazz.isInterface() || clazz.isEnum() || clazz.isAnnotationType() || clazz.getName() == null
+                || isGeneratedClass(clazz)) {
+            return false;
+        }
+
+        final PsiElement parent = clazz.getParent();
+        return parent instanceof PsiFile
+                || (parent instanceof PsiClass && clazz.hasModifierProperty(PsiModifier.STATIC));
+    }
+
+    /**
+     * Is the class generated by this plugin? True for a nested {@code Builder}, {@code BulkBuilder} or
+     * {@code Interner} and the classes nested in them.
+     */
+    static boolean isGeneratedClass(PsiClass clazz) {
+        for (PsiClass current = clazz; current.getParent() instanceof PsiClass;
+             current = (PsiClass) current.getParent()) {
+            final String name = current.getName();
+            if (InnerBuilderGenerator.BUILDER_CLASS_NAME.equals(name)
+                    || InnerBuilderGenerator.BULK_BUILDER_CLASS_NAME.equals(name)
+                    || InnerBuilderGenerator.INTERNER_CLASS_NAME.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the text of an array creation expression with the given element type and length, for example
+     * {@code new int[length][]} for the element type {@code int[]}.
+     */
+    static String newArrayText(PsiType elementType, String length) {
+        final StringBuilder dimensions = new StringBuilder();
+        PsiType componentType = elementType;
+        while (componentType instanceof PsiArrayType) {
+            dimensions.append("[]");
+            componentType = ((PsiArrayType) componentType).getComponentType();
+        }
+        return String.format("new %s[%s]%s", componentType.getCanonicalText(), length, dimensions);
+    }
+
+    /**
+     * Returns the text converting an expression of type Object to the given type. Numeric primitives are unboxed
+     * from any {@code Number}, so for example a {@code Long} can be assigned to an {@code int}.
+     */
+    static String castFromObjectText(PsiType type, String objectText) {
+        if (type instanceof PsiPrimitiveType) {
+            if (PsiType.BOOLEAN.equals(type)) {
+                return String.format("(Boolean) %s", objectText);
+            }
+            if (PsiType.CHAR.equals(type)) {
+                return String.format("(Character) %s", objectText);
+            }
+            return String.format("((Number) %s).%sValue()", objectText, type.getCanonicalText());
+        }
+        return String.format("(%s) %s", type.getCanonicalText(), objectText);
+    }
+
+    static boolean isString(PsiType type) {
+        return type.equalsToText(CommonClassNames.JAVA_LANG_STRING);
+    }
+
+    static boolean isEnum(PsiType type) {
+        final PsiClass psiClass = PsiUtil.resolveClassInType(type);
+        return psiClass != null && psiClass.isEnum();
+    }
+
+    /**
+     * Can a value of the type be written to a {@code DataOutput} directly? True for primitives, boxed primitives,
+     * strings and enums.
+     */
+    static boolean isDataType(PsiType type) {
+        return type instanceof PsiPrimitiveType || PsiPrimitiveType.getUnboxedType(type) != null || isString(type)
+                || isEnum(type);
+    }
+
+    /**
+     * Is the field a numeric counter, summed when builders are merged? True for numeric primitives and their boxed
+     * types named like a count or total, for example {@code errorCount}, {@code total} or {@code numRetries}, but
+     * not {@code discount}, nor limits like {@code maxCount}.
+     */
+    static boolean isCounter(PsiField field) {
+        final PsiType type = field.getType();
+        final PsiPrimitiveType unboxedType = PsiPrimitiveType.getUnboxedType(type);
+        final PsiType primitiveType = unboxedType != null ? unboxedType : type;
+        if (!(primitiveType instanceof PsiPrimitiveType) || PsiType.BOOLEAN.equals(primitiveType)
+                || PsiType.CHAR.equals(primitiveType)) {
+            return false;
+        }
+
+        // whole camel case words only, so discount or checksum are not counters
+        final String name = field.getName();
+        for (final String limitWord : LIMIT_WORDS) {
+            if (name.startsWith(limitWord) && name.length() > limitWord.length()
+                    && Character.isUpperCase(name.charAt(limitWord.length()))) {
+                return false;
+            }
+        }
+        for (final String counterWord : COUNTER_WORDS) {
+            if (name.equals(counterWord) || name.endsWith(capitalize(counterWord))) {
+                return true;
+            }
+        }
+        return name.startsWith("num") && name.length() > 3 && Character.isUpperCase(name.charAt(3));
+    }
+
+    /**
+     * Returns the raw name of a modifiable class to copy a collection or map of the type into, or null if there is
+     * none, for example {@code java.util.ArrayList} for {@code List<String>}.
+     */
+    @Nullable
+    static String modifiableCopyClassText(PsiClassType type) {
+        final String rawTypeText = type.rawType().getCanonicalText();
+        if (CommonClassNames.JAVA_UTIL_LIST.equals(rawTypeText)
+                || CommonClassNames.JAVA_UTIL_COLLECTION.equals(rawTypeText)) {
+            return CommonClassNames.JAVA_UTIL_ARRAY_LIST;
+        } else if (CommonClassNames.JAVA_UTIL_SET.equals(rawTypeText)) {
+            return "java.util.LinkedHashSet";
+        } else if (CommonClassNames.JAVA_UTIL_SORTED_SET.equals(rawTypeText)) {
+            return "java.util.TreeSet";
+        } else if (CommonClassNames.JAVA_UTIL_MAP.equals(rawTypeText)) {
+            return "java.util.LinkedHashMap";
+        } else if (CommonClassNames.JAVA_UTIL_SORTED_MAP.equals(rawTypeText)) {
+            return "java.util.TreeMap";
+        }
+
+        // a concrete collection class, expected to have a copy constructor like the JDK collections
+        final PsiClass psiClass = type.resolve();
+        if (psiClass != null && !psiClass.isInterface() && !psiClass.hasModifierProperty(PsiModifier.ABSTRACT)) {
+            return rawTypeText;
+        }
+        return null;
+    }
+
+    /**
+     * Does the type refer to a type parameter, like {@code T}, {@code T[]} or {@code List<? extends T>}?
+     */
+    static boolean hasTypeParameter(PsiType type) {
+        final PsiType componentType = type.getDeepComponentType();
+        if (!(componentType instanceof PsiClassType)) {
+            return false;
+        }
+
+        final PsiClassType classType = (PsiClassType) componentType;
+        if (classType.resolve() instanceof PsiTypeParameter) {
+            return true;
+        }
+        for (final PsiType parameter : classType.getParameters()) {
+            final PsiType argument = parameter instanceof PsiWildcardType
+                    ? ((PsiWildcardType) parameter).getBound()
+                    : parameter;
+            if (argument != null && hasTypeParameter(argument)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the type arguments of the type to create a copy with, for example {@code <Number>} for
+     * {@code List<? extends Number>}. Returns an empty string for raw types.
+     */
+    static String typeArgumentsText(PsiClassType type) {
+        final PsiType[] parameters = type.getParameters();
+        if (parameters.length == 0) {
+            return "";
+        }
+
+        final StringBuilder typeArguments = new StringBuilder("<");
+        for (final PsiType parameter : parameters) {
+            if (typeArguments.length() > 1) {
+                typeArguments.append(", ");
+            }
+            final PsiType argument = parameter instanceof PsiWildcardType
+                    ? ((PsiWildcardType) parameter).getExtendsBound()
+                    : parameter;
+            typeArguments.append(argument.getCanonicalText());
+        }
+        return typeArguments.append('>').toString();
+    }
+
+    /**
+     * Returns the text of the hash code of the value, consistent with {@link #equalsText}.
+     */
+    static String hashCodeText(PsiType type, String valueText) {
+        if (PsiType.BOOLEAN.equals(type)) {
+            return String.format("(%s ? 1231 : 1237)", valueText);
+        } else if (PsiType.LONG.equals(type)) {
+            return String.format("(int) (%1$s ^ (%1$s >>> 32))", valueText);
+        } else if (PsiType.FLOAT.equals(type)) {
+            return String.format("Float.floatToIntBits(%s)", valueText);
+        } else if (PsiType.DOUBLE.equals(type)) {
+            return String.format("(int) (Double.doubleToLongBits(%1$s) ^ (Double.doubleToLongBits(%1$s) >>> 32))",
+                    valueText);
+        } else if (type instanceof PsiPrimitiveType) {
+            return valueText;
+        } else if (type instanceof PsiArrayType) {
+            return String.format("java.util.Arrays.%s(%s)",
+                    ((PsiArrayType) type).getComponentType() instanceof PsiPrimitiveType ? "hashCode" : "deepHashCode",
+                    valueText);
+        }
+        return String.format("(%1$s == null ? 0 : %1$s.hashCode())", valueText);
+    }
+
+    /**
+     * Returns the text comparing two values of the type for equality, floating point values are compared by their
+     * bits and arrays by their contents.
+     */
+    static String equalsText(PsiType type, String valueText, String otherValueText) {
+        if (PsiType.FLOAT.equals(type)) {
+            return String.format("Float.floatToIntBits(%s) == Float.floatToIntBits(%s)", valueText, otherValueText);
+        } else if (PsiType.DOUBLE.equals(type)) {
+            return String.format("Double.doubleToLongBits(%s) == Double.doubleToLongBits(%s)", valueText,
+                    otherValueText);
+        } else if (type instanceof PsiPrimitiveType) {
+            return String.format("%s == %s", valueText, otherValueText);
+        } else if (type instanceof PsiArrayType) {
+            return String.format("java.util.Arrays.%s(%s, %s)",
+                    ((PsiArrayType) type).getComponentType() instanceof PsiPrimitiveType ? "equals" : "deepEquals",
+                    valueText, otherValueText);
+        }
+        return String.format("(%1$s == null ? %2$s == null : %1$s.equals(%2$s))", valueText, otherValueText);
     }
 
     public static boolean isPrimitive(PsiField psiField) {